@@ -0,0 +1,52 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Replay a {@link JfxCdpRecorder} recording through the proxy and print the result
+ * <p>
+ * Arguments: recording file, optional --realtime to keep recorded timing.
+ * Exits with 2 if the proxy output differs from the recording.
+ */
+public class CdpReplayTool {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("usage: CdpReplayTool recording-file [--realtime]");
+            System.exit(1);
+        }
+
+        boolean realTime = args.length > 1 && args[1].equals("--realtime");
+        JfxCdpReplay replay = new JfxCdpReplay(JfxCdpRecorder.read(new File(args[0])));
+        JfxCdpReplay.Result result = replay.run(realTime);
+        System.out.println(result);
+        if (result.hasDrift()) {
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator for debug server and proxy, no display or Chrome needed
+ * <p>
+ * Starts N proxies with {@link JfxStubDebugger} on a shared dispatcher thread standing in for the
+ * JavaFX application thread, all served by one debug server port, connects a web socket client
+ * to each and sends dev tools commands and console log calls at the requested rates.
+ * <p>
+ * Exits with 1 if any instance failed to start or connect, or commands did not get a response.
+ */
+public class JfxLoadGenerator {
+    static final long RESPONSE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    int instances = 50;
+    int port = 51234;
+    int seconds = 30;
+    double commandRate = 20;
+    double consoleRate = 5;
+    final JfxStubDebugger.Config config = new JfxStubDebugger.Config();
+
+    final JfxLatencyHistogram myRoundTrip = new JfxLatencyHistogram();
+    final AtomicLong myCommandsSent = new AtomicLong();
+    final AtomicLong myResults = new AtomicLong();
+    final AtomicLong myEvents = new AtomicLong();
+    final AtomicLong myConsoleEvents = new AtomicLong();
+    final AtomicInteger myFailures = new AtomicInteger();
+    int myMaxQueueDepth;
+
+    class LoadClient extends WebSocketClient {
+        final ConcurrentHashMap<Integer, Long> myPending = new ConcurrentHashMap<>();
+        final AtomicInteger myNextId = new AtomicInteger(1);
+        int myCommand;
+
+        LoadClient(URI uri) {
+            super(uri);
+        }
+
+        void sendCommand(String method, String params) {
+            int id = myNextId.getAndIncrement();
+            myPending.put(id, System.nanoTime());
+            myCommandsSent.incrementAndGet();
+            send("{\"id\":" + id + ",\"method\":\"" + method + "\"" + (params == null ? "" : ",\"params\":" + params) + "}");
+        }
+
+        void sendNextCommand() {
+            if (!isOpen()) return;
+
+            switch (myCommand++ % 5) {
+                case 0:
+                    sendCommand("Runtime.evaluate", "{\"expression\":\"1+1\",\"objectGroup\":\"console\",\"includeCommandLineAPI\":true,\"silent\":false,\"returnByValue\":false,\"generatePreview\":true}");
+                    break;
+                case 1:
+                    sendCommand("DOM.requestChildNodes", "{\"nodeId\":" + (2 + myCommand % (config.domBreadth * config.domDepth)) + "}");
+                    break;
+                case 2:
+                    sendCommand("Debugger.pause", null);
+                    break;
+                case 3:
+                    sendCommand("Debugger.resume", null);
+                    break;
+                default:
+                    sendCommand("DOM.getDocument", null);
+                    break;
+            }
+        }
+
+        int timedOut(long now) {
+            int count = 0;
+            for (Map.Entry<Integer, Long> entry : myPending.entrySet()) {
+                if (now - entry.getValue() > RESPONSE_TIMEOUT_NANOS) count++;
+            }
+            return count;
+        }
+
+        @Override
+        public void onOpen(ServerHandshake handshake) {
+            sendCommand("Runtime.enable", null);
+            sendCommand("Debugger.enable", null);
+            sendCommand("DOM.enable", null);
+            sendCommand("DOM.getDocument", null);
+        }
+
+        @Override
+        public void onMessage(String message) {
+            String method = JfxDebuggerMetrics.messageMethod(message);
+            if (method == null) {
+                Long sent = myPending.remove(JfxDebuggerMetrics.messageId(message, true));
+                if (sent != null) {
+                    myRoundTrip.record(System.nanoTime() - sent);
+                }
+                myResults.incrementAndGet();
+            } else {
+                if (method.equals("Runtime.consoleAPICalled")) myConsoleEvents.incrementAndGet();
+                myEvents.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void onClose(int code, String reason, boolean remote) {
+
+        }
+
+        @Override
+        public void onError(Exception ex) {
+            System.err.println("Client error " + getURI() + ": " + ex);
+            myFailures.incrementAndGet();
+        }
+    }
+
+    int run() throws InterruptedException {
+        JfxDispatcher.SingleThread dispatcher = new JfxDispatcher.SingleThread("JfxLoadGenerator-Dispatcher");
+        ArrayList<JfxStubDebugger> stubs = new ArrayList<>();
+        ArrayList<DevToolsDebugProxy> proxies = new ArrayList<>();
+        ArrayList<DevToolsDebuggerServer> servers = new ArrayList<>();
+        ArrayList<LoadClient> clients = new ArrayList<>();
+
+        CountDownLatch started = new CountDownLatch(instances);
+        for (int i = 1; i <= instances; i++) {
+            JfxStubDebugger stub = new JfxStubDebugger(dispatcher, config);
+            DevToolsDebugProxy proxy = new DevToolsDebugProxy(stub, new BenchmarkDebuggerAccess());
+            proxy.setDispatcher(dispatcher);
+            proxy.setMetrics(new JfxDebuggerMetrics());
+            stubs.add(stub);
+            proxies.add(proxy);
+            servers.add(new DevToolsDebuggerServer(proxy, port, i, throwable -> {
+                System.err.println("Debug server failed: " + throwable);
+                myFailures.incrementAndGet();
+                started.countDown();
+            }, started::countDown));
+        }
+
+        if (!started.await(30, TimeUnit.SECONDS)) {
+            System.err.println("Timed out starting debug servers");
+            return 1;
+        }
+
+        for (int i = 1; i <= instances; i++) {
+            LoadClient client = new LoadClient(URI.create("ws://localhost:" + port + String.format(JfxWebSocketServer.WEB_SOCKET_RESOURCE, i)));
+            clients.add(client);
+            if (!client.connectBlocking()) {
+                System.err.println("Failed to connect " + client.getURI());
+                myFailures.incrementAndGet();
+            }
+        }
+
+        for (int i = 0; i < instances; i++) {
+            stubs.get(i).startConsoleLog(proxies.get(i), consoleRate);
+        }
+
+        ScheduledExecutorService timer = Executors.newScheduledThreadPool(2);
+        if (commandRate > 0) {
+            long periodNanos = (long) (1000000000L / commandRate);
+            for (LoadClient client : clients) {
+                timer.scheduleAtFixedRate(client::sendNextCommand, periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        while (System.nanoTime() < end) {
+            myMaxQueueDepth = Math.max(myMaxQueueDepth, dispatcher.getQueueDepth());
+            Thread.sleep(100);
+        }
+
+        timer.shutdownNow();
+        for (JfxStubDebugger stub : stubs) {
+            stub.stopConsoleLog();
+        }
+
+        // let in flight commands complete
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(RESPONSE_TIMEOUT_NANOS));
+        long now = System.nanoTime();
+        int timedOut = 0;
+        for (LoadClient client : clients) {
+            timedOut += client.timedOut(now);
+            client.closeBlocking();
+        }
+
+        CountDownLatch stopped = new CountDownLatch(servers.size());
+        for (DevToolsDebuggerServer server : servers) {
+            server.stopDebugServer(shutdown -> stopped.countDown());
+        }
+        stopped.await(10, TimeUnit.SECONDS);
+
+        JfxLatencyHistogram dispatchHop = new JfxLatencyHistogram();
+        long maxCall = 0;
+        long maxSendMessage = 0;
+        for (DevToolsDebugProxy proxy : proxies) {
+            JfxDebuggerMetrics metrics = proxy.getMetrics();
+            if (metrics != null) {
+                maxCall = Math.max(maxCall, metrics.getCallLatency().getMaxNanos());
+                maxSendMessage = Math.max(maxSendMessage, metrics.getSendMessageLatency().getMaxNanos());
+                dispatchHop.record(metrics.getFxHopLatency().getPercentileNanos(99));
+            }
+        }
+
+        System.out.println(String.format("instances: %d, seconds: %d, command rate: %.1f/s, console rate: %.1f/s, dom: %d:%d",
+                instances, seconds, commandRate, consoleRate, config.domBreadth, config.domDepth));
+        System.out.println(String.format("commands: %d, results: %d, events: %d, console events: %d",
+                myCommandsSent.get(), myResults.get(), myEvents.get(), myConsoleEvents.get()));
+        System.out.println("round trip: " + myRoundTrip);
+        System.out.println(String.format("proxy max call: %d us, max sendMessage: %d us, worst instance dispatch hop p99: %d us, max dispatcher queue: %d",
+                maxCall / 1000, maxSendMessage / 1000, dispatchHop.getMaxNanos() / 1000, myMaxQueueDepth));
+        System.out.println(String.format("failures: %d, timed out commands: %d", myFailures.get(), timedOut));
+
+        dispatcher.shutdown();
+        return myFailures.get() > 0 || timedOut > 0 ? 1 : 0;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        JfxLoadGenerator generator = new JfxLoadGenerator();
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            String value = i + 1 < args.length ? args[i + 1] : "";
+            switch (arg) {
+                case "--instances":
+                    generator.instances = Integer.parseInt(value);
+                    i++;
+                    break;
+                case "--port":
+                    generator.port = Integer.parseInt(value);
+                    i++;
+                    break;
+                case "--seconds":
+                    generator.seconds = Integer.parseInt(value);
+                    i++;
+                    break;
+                case "--command-rate":
+                    generator.commandRate = Double.parseDouble(value);
+                    i++;
+                    break;
+                case "--console-rate":
+                    generator.consoleRate = Double.parseDouble(value);
+                    i++;
+                    break;
+                case "--dom": {
+                    String[] parts = value.split(":");
+                    generator.config.domBreadth = Integer.parseInt(parts[0]);
+                    generator.config.domDepth = Integer.parseInt(parts[1]);
+                    i++;
+                    break;
+                }
+                default:
+                    System.err.println("Usage: JfxLoadGenerator [--instances N] [--port P] [--seconds S] [--command-rate N] [--console-rate N] [--dom breadth:depth]");
+                    System.exit(2);
+                    return;
+            }
+        }
+
+        System.exit(generator.run());
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import com.vladsch.boxed.json.BoxedJsArray;
+import com.vladsch.boxed.json.BoxedJsValue;
+import com.vladsch.boxed.json.BoxedJson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Proxy message path: {@link DevToolsDebugProxy#call(String)}, {@link DevToolsDebugProxy#sendMessage(String)}
+ * DOM mirror and console API forwarding
+ * <p>
+ * All paths used here stay on the calling thread, no JavaFX toolkit is needed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Djava.awt.headless=true" })
+@State(Scope.Thread)
+public class ProxyMessageBenchmark {
+    static final int DOM_PARENT_ID = 15;
+
+    // breadth:depth of DOM.setChildNodes subtree
+    @Param({ "1:40", "4:6", "10:4" })
+    public String domShape;
+
+    @Param({ "1", "8" })
+    public int pausedCallFrames;
+
+    BenchmarkDebugger myDebugger;
+    DevToolsDebugProxy myProxy;
+    Blackhole myBlackhole;
+    String[] myCommands;
+    int myCommandIndex;
+
+    String myPausedEvent;
+    String myDomEvent;
+    BoxedJsArray myDomNodes;
+    int myDeepestNodeId;
+    String myConsolePausedParam;
+    BoxedJsValue myConsoleArgParam;
+    BoxedJsValue myConsoleStringParam;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        myBlackhole = blackhole;
+        myDebugger = new BenchmarkDebugger();
+        myProxy = new DevToolsDebugProxy(myDebugger, new BenchmarkDebuggerAccess());
+        myProxy.setMessageCallback(data -> {
+            myBlackhole.consume(data);
+            return null;
+        });
+        myProxy.setEnabled(true);
+        myProxy.call(CdpPayloads.CONTEXT_CREATED);
+
+        myCommands = new String[CdpPayloads.SMALL_COMMANDS.length];
+        for (int i = 0; i < myCommands.length; i++) {
+            myCommands[i] = String.format(CdpPayloads.SMALL_COMMANDS[i], 1000 + i);
+        }
+
+        String[] shape = domShape.split(":");
+        int breadth = Integer.parseInt(shape[0]);
+        int depth = Integer.parseInt(shape[1]);
+        myDomEvent = CdpPayloads.domSetChildNodes(DOM_PARENT_ID, breadth, depth);
+        myDomNodes = BoxedJson.boxedFrom(myDomEvent).evalJsArray("params.nodes");
+        myDeepestNodeId = CdpPayloads.domLastNodeId(DOM_PARENT_ID, breadth, depth);
+
+        myPausedEvent = CdpPayloads.debuggerPaused(pausedCallFrames, 6);
+        myConsolePausedParam = myPausedEvent;
+        myConsoleArgParam = BoxedJson.boxedFrom(CdpPayloads.CONSOLE_ARG_PARAM);
+        myConsoleStringParam = BoxedJson.boxedFrom(CdpPayloads.CONSOLE_STRING_PARAM);
+
+        // mirror the tree so the selector path has something to walk
+        myProxy.call(myDomEvent);
+    }
+
+    @Benchmark
+    public void callPassthroughEvent() {
+        myProxy.call(CdpPayloads.SCRIPT_PARSED);
+    }
+
+    @Benchmark
+    public void callNetworkEvent() {
+        myProxy.call(CdpPayloads.LOADING_FINISHED);
+    }
+
+    @Benchmark
+    public void callDebuggerPaused() {
+        myProxy.call(myPausedEvent);
+    }
+
+    @Benchmark
+    public void callDomSetChildNodes() {
+        myProxy.call(myDomEvent);
+    }
+
+    @Benchmark
+    public void sendMessageRoundTrip() {
+        // id remapped on the way to WebView and back on the response
+        myProxy.sendMessage(myCommands[myCommandIndex++ % myCommands.length]);
+    }
+
+    @Benchmark
+    public boolean addNodeChildren() {
+        return myProxy.addNodeChildren(DOM_PARENT_ID, myDomNodes, 0, null, 0);
+    }
+
+    @Benchmark
+    public int addNodeSelectorPath() {
+        StringBuilder sb = new StringBuilder();
+        myProxy.addNodeSelectorPath(myDeepestNodeId, sb);
+        return sb.length();
+    }
+
+    @Benchmark
+    public int getNodeSelectorPath() {
+        // cached after first call, mirror does not change between invocations
+        return myProxy.getCachedNodePath(myDeepestNodeId).length();
+    }
+
+    @Benchmark
+    public void sendConsoleAPI() {
+        JfxConsoleApiArgs consoleArgs = new JfxConsoleApiArgs(new Object[3], "log", System.nanoTime());
+        consoleArgs.setPausedParam(myConsolePausedParam);
+        consoleArgs.setParamJson(0, myConsoleStringParam);
+        consoleArgs.setParamJson(1, myConsoleArgParam);
+        consoleArgs.setParamJson(2, myConsoleStringParam);
+        myProxy.sendConsoleAPI(consoleArgs);
+    }
+}
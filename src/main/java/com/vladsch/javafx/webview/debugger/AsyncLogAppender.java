@@ -0,0 +1,109 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.PrintStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Console appender which never blocks the caller
+ * <p>
+ * Messages are queued and written to System.out or System.err by a daemon thread. If the queue is full
+ * the message is dropped and counted, the next written message reports how many were dropped.
+ */
+public class AsyncLogAppender {
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private static AsyncLogAppender ourInstance = null;
+
+    private final ArrayBlockingQueue<Entry> myQueue;
+    private final AtomicLong myDropped = new AtomicLong(0);
+
+    private static class Entry {
+        final @NotNull String message;
+        final boolean isError;
+
+        Entry(@NotNull final String message, final boolean isError) {
+            this.message = message;
+            this.isError = isError;
+        }
+    }
+
+    public static AsyncLogAppender getInstance() {
+        synchronized (AsyncLogAppender.class) {
+            if (ourInstance == null) {
+                ourInstance = new AsyncLogAppender(DEFAULT_CAPACITY);
+            }
+            return ourInstance;
+        }
+    }
+
+    public AsyncLogAppender(int capacity) {
+        myQueue = new ArrayBlockingQueue<>(capacity);
+        Thread thread = new Thread(this::run, "JfxWebViewDebugger-LogAppender");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void println(@NotNull String message) {
+        offer(new Entry(message, false));
+    }
+
+    public void printlnErr(@NotNull String message) {
+        offer(new Entry(message, true));
+    }
+
+    public long getDroppedCount() {
+        return myDropped.get();
+    }
+
+    private void offer(Entry entry) {
+        if (!myQueue.offer(entry)) {
+            myDropped.incrementAndGet();
+        }
+    }
+
+    private void run() {
+        try {
+            //noinspection InfiniteLoopStatement
+            while (true) {
+                Entry entry = myQueue.take();
+                long dropped = myDropped.getAndSet(0);
+                if (dropped > 0) {
+                    System.err.println("AsyncLogAppender: dropped " + dropped + " messages");
+                }
+
+                PrintStream out = entry.isError ? System.err : System.out;
+                out.println(entry.message);
+            }
+        } catch (InterruptedException ignored) {
+            // daemon thread, nothing to clean up
+        }
+    }
+}
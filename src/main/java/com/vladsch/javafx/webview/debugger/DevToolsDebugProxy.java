@@ -25,7 +25,6 @@
 
 package com.vladsch.javafx.webview.debugger;
 
-import com.sun.javafx.application.PlatformImpl;
 import com.sun.javafx.scene.web.Debugger;
 import com.vladsch.boxed.json.BoxedJsArray;
 import com.vladsch.boxed.json.BoxedJsNumber;
@@ -35,7 +34,6 @@ import com.vladsch.boxed.json.BoxedJsValue;
 import com.vladsch.boxed.json.BoxedJson;
 import com.vladsch.boxed.json.MutableJsArray;
 import com.vladsch.boxed.json.MutableJsObject;
-import javafx.application.Platform;
 import javafx.scene.web.WebEngine;
 import javafx.util.Callback;
 import netscape.javascript.JSException;
@@ -44,12 +42,15 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.json.JsonValue;
-import javax.swing.SwingUtilities;
 import java.lang.reflect.Field;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
@@ -78,13 +79,18 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
     String mySendNestingIndent = "";
     private boolean myWaitingForEvaluateScript = false;
     private final ArrayList<JfxConsoleApiArgs> myQueuedLogRequests = new ArrayList<>();
+    private final JfxArgTable myConsoleArgTable = new JfxArgTable("console", 256); // args of queued logs, cleared with the page
+    private final ArrayDeque<String> myConsoleObjectIds = new ArrayDeque<>(); // console group remote objects, oldest first
+    private int myConsoleObjectLimit = DEFAULT_CONSOLE_OBJECT_LIMIT;
+    private long myReleasedObjectCount;
     private Runnable myOnEvalDoneRunnable = null;
     private Runnable myOnDebuggerResumedRunnable = null;
     private boolean myProcessingLogRequest = false;
     private Consumer<String> myOnPausedParamsRunnable = null;
     private Consumer<Integer> myOnPageContextCreatedRunnable = null;
     private DebugOnLoad myDebugOnLoad = DebugOnLoad.NONE;
-    private final HashSet<Integer> myOldPageContextIds = new HashSet<>();
+    private final int[] myOldPageContextIds = new int[OLD_PAGE_CONTEXT_IDS]; // ring of previous page context ids, 0 is unused
+    private int myOldPageContextNext;
     private boolean mySuppressPageReloadRequest;   // when page reload requested from javafx updater not debugger and we don't want to receive page reloading message for it
     private DebuggerState myDebuggerState;
     private BoxedJsObject myRuntimeEvaluateArgResult;
@@ -96,8 +102,41 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
     private boolean myIsShuttingDown;
     private HashMap<Integer, BoxedJsObject> myNodeIdMap = new HashMap<>(); // node id to params of DOM.setChildNodes method from webView with "parentId" added to each node and "ordinal" position in parent's children
     private int myRootNodeId = 0; // this is the document node id
+    final private HashMap<Integer, String> myNodePathCache = new HashMap<>(); // node id to cached selector path, removed when the parent's children change
+    private int myDomDocumentDepth = DEFAULT_DOM_DOCUMENT_DEPTH;
+    private @Nullable JfxDomEventCoalescer myDomCoalescer; // null if DOM events are not coalesced
+    private final HashSet<Integer> myCollapsedNodeIds = new HashSet<>(); // nodes sent by coalescer without their children, WebView will not send these again
+    private volatile Set<String> myDisabledDomains = new HashSet<>(); // domains turned off by the host application
+    final private HashMap<String, Boolean> myClientDomains = new HashMap<>(); // domain to true if enabled, false if disabled by dev tools
+    final private HashSet<String> myProxyEnabledDomains = new HashSet<>(); // domains enabled by server or proxy, not by dev tools
+    private volatile String[] myGatedDomains = EMPTY_DOMAINS; // events of these domains are not forwarded
+    private long myGatedEventCount;
+    private int myDomCoalescingWindow;
+    private boolean myDomFlushScheduled;
+    private @NotNull JfxDispatcher myDispatcher = JfxDispatcher.getInstance();
+    private JfxCdpTrafficListener[] myTrafficListeners = EMPTY_LISTENERS;
+    private volatile @Nullable JfxDebuggerMetrics myMetrics;
+    private volatile @Nullable JfxTraceWriter myTracer;
+    private boolean myHighlightOverlay = true;
+    private boolean myHighlightNodeRegistry = true;
+    final private HashSet<Integer> myRegisteredNodeIds = new HashSet<>(); // mirrored node ids registered or queued for the js helper registry
+    final private LinkedHashSet<Integer> myPendingNodeIds = new LinkedHashSet<>(); // mirrored node ids to register, parents before children
+    final private HashSet<Integer> myRemovedNodeIds = new HashSet<>(); // registered node ids to drop from the js helper registry
+    private boolean myClearNodeRegistry; // js helper registry to be cleared with the next registration
+    private boolean myNodeIdFlushScheduled;
+    private long myPauseStartNanos;
     final LogHandler LOG = LogHandler.getInstance();
 
+    private static final JfxCdpTrafficListener[] EMPTY_LISTENERS = new JfxCdpTrafficListener[0];
+    private static final String[] EMPTY_DOMAINS = new String[0];
+    private static final String EVENT_PREFIX = "{\"method\":\"";
+    private static final Set<String> PROXY_DOMAINS = new HashSet<>(Arrays.asList("Runtime", "Debugger")); // proxy needs their events
+    private static final int OLD_PAGE_CONTEXT_IDS = 16; // dev tools does not hold on to contexts of older pages
+    public static final int DEFAULT_CONSOLE_OBJECT_LIMIT = 0; // keep all, as dev tools expects
+    public static final int DEFAULT_DOM_DOCUMENT_DEPTH = 2; // what WebKit uses when the request has none
+    private static final String INJECTED_OBJECT_GROUP = "markdownNavigatorInjected"; // released when JSBridge is requested
+    private static final String HELPER_OBJECT_GROUP = "markdownNavigatorHelper"; // released after each helper call
+
     // reflects the last command received for debugger
     // needed so that after pausing for console log stack trace, we can use the same
     // command instead of resume
@@ -138,8 +177,20 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
     }
 
     public DevToolsDebugProxy(@NotNull final WebEngine engine, @NotNull final JfxDebuggerAccess jfxDebuggerAccess) {
+        this(getDebugger(engine), jfxDebuggerAccess);
+    }
+
+    /**
+     * Create proxy for a given debugger instance
+     * <p>
+     * Used to run the proxy against a stand-in debugger, without a WebEngine
+     *
+     * @param debugger          debugger to proxy, null if not available
+     * @param jfxDebuggerAccess access to WebView side functions
+     */
+    public DevToolsDebugProxy(@Nullable final Debugger debugger, @NotNull final JfxDebuggerAccess jfxDebuggerAccess) {
         myJfxDebuggerAccess = jfxDebuggerAccess;
-        myDebugger = getDebugger(engine);
+        myDebugger = debugger;
         clearState();
 
         if (myDebugger != null) {
@@ -148,8 +199,11 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
     }
 
     private void clearState() {
+        notifyStateChange("clear state");
         myDebuggerId = 1;
         myLastPageContextId = 0;
+        Arrays.fill(myOldPageContextIds, 0);
+        myOldPageContextNext = 0;
         myAsyncIdMap.clear();
         myAsyncResultMap.clear();
         mySendNesting = 0;
@@ -176,7 +230,49 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
         myOnDebuggerResumedRunnable = null;
         myNodeIdMap.clear();
         myRootNodeId = 0;
-        myJfxDebuggerAccess.clearArg();
+        myNodePathCache.clear();
+        myRegisteredNodeIds.clear();
+        myPendingNodeIds.clear();
+        myRemovedNodeIds.clear();
+        if (myDomCoalescer != null) myDomCoalescer.clear();
+        myCollapsedNodeIds.clear();
+        myClearNodeRegistry = false; // new page has a new helper
+        myConsoleArgTable.newGeneration();
+        myJfxDebuggerAccess.clearAllArgs();
+        myConsoleObjectIds.clear(); // gone with the page
+    }
+
+    public int getConsoleObjectLimit() {
+        return myConsoleObjectLimit;
+    }
+
+    /**
+     * Limit remote objects the proxy creates in the {@code console} object group for log args and
+     * console evaluate results, oldest are released once there are more
+     * <p>
+     * Released objects can no longer be expanded in dev tools console.
+     *
+     * @param consoleObjectLimit maximum objects kept, 0 to keep all until console is cleared or page reloads, default
+     */
+    public void setConsoleObjectLimit(int consoleObjectLimit) {
+        myDispatcher.runLater(() -> {
+            myConsoleObjectLimit = consoleObjectLimit;
+            releaseConsoleObjects();
+        });
+    }
+
+    /**
+     * @return number of console group objects released because of the limit
+     */
+    public long getReleasedObjectCount() {
+        return myReleasedObjectCount;
+    }
+
+    /**
+     * @return number of console log args still staged when their page went away
+     */
+    public long getConsoleArgLeakCount() {
+        return myConsoleArgTable.getLeakCount();
     }
 
     @Override
@@ -185,7 +281,36 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
     }
 
     private void logMessage(final String message) {
-        if (LOG.isDebugEnabled()) System.out.println(message);
+        if (LOG.isDebugEnabled()) AsyncLogAppender.getInstance().println(message);
+    }
+
+    // fixed arity so calls with debug disabled do not allocate an args array or box ints
+    private void logMessage(final String format, final Object arg) {
+        if (LOG.isDebugEnabled()) AsyncLogAppender.getInstance().println(String.format(format, arg));
+    }
+
+    private void logMessage(final String format, final int arg) {
+        if (LOG.isDebugEnabled()) AsyncLogAppender.getInstance().println(String.format(format, arg));
+    }
+
+    private void logMessage(final String format, final Object arg1, final Object arg2) {
+        if (LOG.isDebugEnabled()) AsyncLogAppender.getInstance().println(String.format(format, arg1, arg2));
+    }
+
+    private void logMessage(final String format, final Object arg1, final int arg2) {
+        if (LOG.isDebugEnabled()) AsyncLogAppender.getInstance().println(String.format(format, arg1, arg2));
+    }
+
+    private void logMessage(final String format, final int arg1, final Object arg2) {
+        if (LOG.isDebugEnabled()) AsyncLogAppender.getInstance().println(String.format(format, arg1, arg2));
+    }
+
+    private void logMessage(final String format, final int arg1, final int arg2) {
+        if (LOG.isDebugEnabled()) AsyncLogAppender.getInstance().println(String.format(format, arg1, arg2));
+    }
+
+    private void logMessage(final String format, final int arg1, final int arg2, final Object arg3) {
+        if (LOG.isDebugEnabled()) AsyncLogAppender.getInstance().println(String.format(format, arg1, arg2, arg3));
     }
 
     @Override
@@ -212,10 +337,10 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
                 }
             };
 
-            if (Platform.isFxApplicationThread()) {
+            if (myDispatcher.isDispatchThread()) {
                 action.run();
             } else {
-                PlatformImpl.runAndWait(action);
+                myDispatcher.runAndWait(action);
             }
         } else if (runnable != null) {
             runnable.run();
@@ -225,7 +350,7 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
     @Override
     public void onOpen() {
         myIsShuttingDown = false;
-        Platform.runLater(myJfxDebuggerAccess::onConnectionOpen);
+        myDispatcher.runLater(myJfxDebuggerAccess::onConnectionOpen);
     }
 
     @Override
@@ -247,12 +372,15 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
         // FIX: return to not yet connected condition
         removeAllBreakpoints(() -> {
             releaseDebugger(true, () -> {
-                //noinspection Convert2MethodRef
                 clearOnPageReload();
+
+                // next dev tools connection enables what it needs
+                myClientDomains.clear();
+                updateGatedDomains();
             });
         });
 
-        Platform.runLater(myJfxDebuggerAccess::onConnectionClosed);
+        myDispatcher.runLater(myJfxDebuggerAccess::onConnectionClosed);
     }
 
     @Override
@@ -260,7 +388,7 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
         if (!myIsEnabled || myDebugger == null) return;
 
         // must be called on javafx thread, debugger can be paused or not
-        Platform.runLater(() -> {
+        myDispatcher.runLater(() -> {
             // one of those left over break points
             // Before resuming, remove all break points
             ArrayList<String> breakPoints = new ArrayList<>(myBreakpoints.keySet());
@@ -271,8 +399,8 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
                         .evalSet("params.breakpointId", breakpointId)
                 ;
                 String removeParam = jsRemoveBreakPoint.toString();
-                logMessage(String.format("Removing all breakpoints %s", removeParam));
-                myDebugger.sendMessage(removeParam);
+                logMessage("Removing all breakpoints %s", removeParam);
+                debuggerSendMessage(removeParam);
             }
             myBreakpoints.clear();
             myBreakpointsToRemove.clear();
@@ -298,9 +426,9 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
         // send page reload so it can be debugged, does not work
         if (!myPageReloadStarted) {
             myPageReloadStarted = true;
-            Platform.runLater(() -> {
+            myDispatcher.runLater(() -> {
                 mySuppressPageReloadRequest = false;
-                logMessage(String.format("Sending page reload, request %d", myDebuggerId));
+                logMessage("Sending page reload, request %d", myDebuggerId);
                 debuggerSend(String.format("{\"id\":%d,\"method\":\"Page.reload\", \"params\": {\"ignoreCache\":false}}", myDebuggerId++), null);
             });
         }
@@ -316,8 +444,8 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
             mySendNesting++;
             String wasIndent = mySendNestingIndent;
             mySendNestingIndent += "  ";
-            logMessage(String.format("%sSending %s", mySendNestingIndent, message));
-            myDebugger.sendMessage(message);
+            logMessage("%sSending %s", mySendNestingIndent, message);
+            debuggerSendMessage(message);
             if (evalAfter != null) {
                 yieldDebugger(() -> {
                     myJfxDebuggerAccess.eval(evalAfter);
@@ -328,6 +456,510 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
         }
     }
 
+    private void debuggerSendMessage(String message) {
+        assert myDebugger != null;
+        notifyTrafficListeners(JfxCdpTrafficListener.PROXY_TO_WEBVIEW, message);
+        final JfxDebuggerMetrics metrics = myMetrics;
+        if (metrics != null) {
+            metrics.commandSent(message, System.nanoTime());
+        }
+
+        final JfxTraceWriter tracer = myTracer;
+        if (tracer == null) {
+            myDebugger.sendMessage(message);
+        } else {
+            final long startNanos = System.nanoTime();
+            myDebugger.sendMessage(message);
+            traceMessage(tracer, JfxTraceWriter.CAT_INTERNAL, message, startNanos);
+        }
+    }
+
+    private static void traceMessage(@NotNull JfxTraceWriter tracer, @NotNull String category, @NotNull String message, long startNanos) {
+        String method = JfxDebuggerMetrics.messageMethod(message);
+        if (method == null) {
+            tracer.span("result", category, startNanos, JfxDebuggerMetrics.messageId(message, true));
+        } else {
+            // events have no id, params may have nested ids
+            tracer.span(method, category, startNanos, category.equals(JfxTraceWriter.CAT_EVENT) ? 0 : JfxDebuggerMetrics.messageId(message, false));
+        }
+    }
+
+    private void devToolsCallback(String message) {
+        // keep held DOM events ahead of what follows them
+        if (myDomCoalescer != null && !myDomCoalescer.isEmpty()) {
+            flushDomEvents();
+        }
+        devToolsSend(message);
+    }
+
+    private void devToolsSend(String message) {
+        notifyTrafficListeners(JfxCdpTrafficListener.PROXY_TO_DEVTOOLS, message);
+        if (myCallback != null) {
+            myCallback.call(message);
+        }
+    }
+
+    private void notifyStateChange(String state) {
+        JfxCdpTrafficListener[] listeners = myTrafficListeners;
+        if (listeners.length > 0) {
+            long nanos = System.nanoTime();
+            for (JfxCdpTrafficListener listener : listeners) {
+                listener.onStateChange(nanos, state);
+            }
+        }
+    }
+
+    // fixed arity so there is no args array or boxing without listeners
+    private void notifyStateChange(String format, int arg) {
+        if (myTrafficListeners.length > 0) notifyStateChange(String.format(format, arg));
+    }
+
+    private void notifyStateChange(String format, String arg) {
+        if (myTrafficListeners.length > 0) notifyStateChange(String.format(format, arg));
+    }
+
+    private void notifyTrafficListeners(int direction, String message) {
+        JfxCdpTrafficListener[] listeners = myTrafficListeners;
+        if (listeners.length > 0) {
+            long nanos = System.nanoTime();
+            for (JfxCdpTrafficListener listener : listeners) {
+                listener.onMessage(direction, nanos, message);
+            }
+        }
+    }
+
+    /**
+     * Add listener for messages between proxy and WebView debugger
+     *
+     * @param listener listener
+     */
+    public void addTrafficListener(@NotNull JfxCdpTrafficListener listener) {
+        synchronized (this) {
+            JfxCdpTrafficListener[] listeners = Arrays.copyOf(myTrafficListeners, myTrafficListeners.length + 1);
+            listeners[listeners.length - 1] = listener;
+            myTrafficListeners = listeners;
+        }
+    }
+
+    public void removeTrafficListener(@NotNull JfxCdpTrafficListener listener) {
+        synchronized (this) {
+            ArrayList<JfxCdpTrafficListener> listeners = new ArrayList<>(Arrays.asList(myTrafficListeners));
+            if (listeners.remove(listener)) {
+                myTrafficListeners = listeners.isEmpty() ? EMPTY_LISTENERS : listeners.toArray(EMPTY_LISTENERS);
+            }
+        }
+    }
+
+    public @Nullable JfxDebuggerMetrics getMetrics() {
+        return myMetrics;
+    }
+
+    /**
+     * Set metrics collector, null to disable collection
+     *
+     * @param metrics metrics or null
+     */
+    public void setMetrics(@Nullable JfxDebuggerMetrics metrics) {
+        myMetrics = metrics;
+    }
+
+    public boolean isHighlightOverlay() {
+        return myHighlightOverlay;
+    }
+
+    /**
+     * Highlight nodes hovered in dev tools with an overlay element showing content, padding, border and
+     * margin boxes in dev tools colors, otherwise a highlight class is added to the page element
+     *
+     * @param highlightOverlay true to use overlay, default
+     */
+    public void setHighlightOverlay(boolean highlightOverlay) {
+        myHighlightOverlay = highlightOverlay;
+    }
+
+    public boolean isHighlightNodeRegistry() {
+        return myHighlightNodeRegistry;
+    }
+
+    /**
+     * Resolve highlighted nodes through a nodeId registry kept by the js helper. Nodes are registered as the DOM
+     * mirror receives them, by their ordinal in the already registered parent, so highlight sends only the id.
+     * The helper holds nodes weakly and drops them when they are removed from the document.
+     *
+     * @param highlightNodeRegistry true to use registry, default
+     */
+    public void setHighlightNodeRegistry(boolean highlightNodeRegistry) {
+        myHighlightNodeRegistry = highlightNodeRegistry;
+        clearRegisteredNodeIds();
+    }
+
+    public int getDomDocumentDepth() {
+        return myDomDocumentDepth;
+    }
+
+    /**
+     * Depth of DOM.getDocument requests passed to WebView, requests for more are reduced to it
+     * <p>
+     * The mirror holds only nodes WebView sent, deeper nodes are child counts until dev tools expands them with
+     * DOM.requestChildNodes, so a large document is not mirrored when dev tools attaches.
+     *
+     * @param domDocumentDepth depth, default {@link #DEFAULT_DOM_DOCUMENT_DEPTH}, -1 to pass requests as is
+     */
+    public void setDomDocumentDepth(int domDocumentDepth) {
+        myDomDocumentDepth = domDocumentDepth;
+    }
+
+    /**
+     * Coalesce DOM mutation events sent to dev tools, call on dispatch thread
+     * <p>
+     * Events are held for the window, insert/remove pairs of the same node are dropped, repeated attribute and
+     * character data changes keep the last value. Parents with more than burstThreshold inserts and removes in
+     * a window get their children sent from the DOM mirror instead. Any other message to dev tools first sends
+     * the held events.
+     *
+     * @param windowMillis   milliseconds to hold events, 0 to disable, default
+     * @param burstThreshold inserts and removes under one parent after which its children are resent
+     */
+    public void setDomEventCoalescing(int windowMillis, int burstThreshold) {
+        flushDomEvents();
+        myDomCoalescingWindow = windowMillis;
+        myDomCoalescer = windowMillis > 0 ? new JfxDomEventCoalescer(burstThreshold) : null;
+    }
+
+    public int getDomEventCoalescingWindow() {
+        return myDomCoalescingWindow;
+    }
+
+    /**
+     * @return DOM events held for coalescing since it was enabled
+     */
+    public long getDomEventsReceived() {
+        JfxDomEventCoalescer coalescer = myDomCoalescer;
+        return coalescer == null ? 0 : coalescer.getReceived();
+    }
+
+    /**
+     * @return DOM event messages sent to dev tools since coalescing was enabled
+     */
+    public long getDomEventsSent() {
+        JfxDomEventCoalescer coalescer = myDomCoalescer;
+        return coalescer == null ? 0 : coalescer.getSent();
+    }
+
+    private void flushDomEvents() {
+        myDomFlushScheduled = false;
+        JfxDomEventCoalescer coalescer = myDomCoalescer;
+        if (coalescer != null && !coalescer.isEmpty()) {
+            coalescer.flush(myNodeIdMap::get, myCollapsedNodeIds, this::devToolsSend);
+        }
+    }
+
+    private void clearRegisteredNodeIds() {
+        myPendingNodeIds.clear();
+        myRemovedNodeIds.clear();
+        if (!myRegisteredNodeIds.isEmpty()) {
+            myRegisteredNodeIds.clear();
+            myClearNodeRegistry = true;
+        }
+    }
+
+    private void registerNodeId(int nodeId) {
+        if (myHighlightNodeRegistry && myRegisteredNodeIds.add(nodeId)) {
+            myRemovedNodeIds.remove(nodeId);
+            myPendingNodeIds.add(nodeId);
+            if (!myNodeIdFlushScheduled) {
+                myNodeIdFlushScheduled = true;
+                yieldDebugger(this::flushNodeIdRegistrations);
+            }
+        }
+    }
+
+    private void flushNodeIdRegistrations() {
+        myNodeIdFlushScheduled = false;
+        if (myLastPageContextId > 0) {
+            String registrations = getNodeIdRegistrations();
+            if (registrations != null) {
+                evaluateHelperScript(registrations);
+            }
+        }
+    }
+
+    /**
+     * Script registering queued node ids with the js helper, resolved from the mirror as it is now so ordinals
+     * changed since the nodes were queued are not used
+     *
+     * @return script or null if nothing to register
+     */
+    @Nullable
+    private String getNodeIdRegistrations() {
+        if (myPendingNodeIds.isEmpty() && myRemovedNodeIds.isEmpty() && !myClearNodeRegistry) return null;
+
+        StringBuilder sb = new StringBuilder();
+        if (myClearNodeRegistry) sb.append("markdownNavigator.clearNodeIds(), ");
+        sb.append("markdownNavigator.registerNodeIds([");
+        String sep = "";
+        for (int nodeId : myPendingNodeIds) {
+            if (nodeId == myRootNodeId) {
+                sb.append(sep).append("0,0,").append(nodeId);
+                sep = ",";
+            } else {
+                BoxedJsObject jsNode = myNodeIdMap.get(nodeId);
+                if (jsNode != null) {
+                    BoxedJsNumber jsParentId = jsNode.getJsonNumber("parentId");
+                    BoxedJsNumber jsOrdinal = jsNode.getJsonNumber("ordinal");
+                    if (jsParentId.isValid() && jsOrdinal.isValid()) {
+                        sb.append(sep).append(jsParentId.intValue()).append(',').append(jsOrdinal.intValue()).append(',').append(nodeId);
+                        sep = ",";
+                    }
+                }
+            }
+        }
+        sb.append("], [");
+        sep = "";
+        for (int nodeId : myRemovedNodeIds) {
+            sb.append(sep).append(nodeId);
+            sep = ",";
+        }
+        sb.append("])");
+
+        myPendingNodeIds.clear();
+        myRemovedNodeIds.clear();
+        myClearNodeRegistry = false;
+        return sb.toString();
+    }
+
+    private void updateMirrorAttribute(@NotNull BoxedJsObject json, boolean removed) {
+        BoxedJsObject jsNode = myNodeIdMap.get(json.evalJsNumber("params.nodeId").intValue());
+        BoxedJsString jsName = json.evalJsString("params.name");
+        if (jsNode != null && jsName.isValid()) {
+            // attributes are name, value pairs
+            BoxedJsArray jsAttributes = jsNode.getJsonArray("attributes");
+            if (jsAttributes.isValid()) {
+                String name = jsName.getString();
+                int iMax = jsAttributes.size();
+                int i;
+                for (i = 0; i + 1 < iMax; i += 2) {
+                    if (name.equals(jsAttributes.getJsString(i).getString())) break;
+                }
+
+                if (removed) {
+                    if (i + 1 < iMax) {
+                        jsAttributes.remove(i + 1);
+                        jsAttributes.remove(i);
+                    }
+                } else {
+                    BoxedJsString jsValue = json.evalJsString("params.value");
+                    if (i + 1 < iMax) {
+                        jsAttributes.set(i + 1, jsValue);
+                    } else {
+                        jsAttributes.add(jsName);
+                        jsAttributes.add(jsValue);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove a node removed from the document and its children from the mirror, cached paths and node registry
+     *
+     * @param nodeId id of removed node
+     */
+    private void removeMirrorNodes(int nodeId) {
+        BoxedJsObject jsNode = myNodeIdMap.remove(nodeId);
+        myNodePathCache.remove(nodeId);
+
+        // the helper also drops detached nodes on lookup, this releases them where it cannot hold nodes weakly
+        if (myRegisteredNodeIds.remove(nodeId) && !myPendingNodeIds.remove(nodeId)) {
+            myRemovedNodeIds.add(nodeId);
+        }
+
+        if (jsNode != null) {
+            BoxedJsArray jsChildren = jsNode.getJsonArray("children");
+            if (jsChildren.isValid()) {
+                int iMax = jsChildren.size();
+                for (int i = 0; i < iMax; i++) {
+                    BoxedJsNumber jsChildId = jsChildren.getJsonObject(i).getJsonNumber("nodeId");
+                    if (jsChildId.isValid()) {
+                        removeMirrorNodes(jsChildId.intValue());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove cached paths of nodes below the parent, their ordinals in its children list are changing
+     * <p>
+     * A path is cached only with the parent's path, so children without a cached path have none below them.
+     *
+     * @param parentId id of node whose children change
+     */
+    private void removeCachedNodePaths(int parentId) {
+        if (!myNodePathCache.isEmpty()) {
+            BoxedJsArray jsChildren = myNodeIdMap.getOrDefault(parentId, BoxedJsValue.HAD_NULL_OBJECT).getJsonArray("children");
+            if (jsChildren.isValid()) {
+                int iMax = jsChildren.size();
+                for (int i = 0; i < iMax; i++) {
+                    BoxedJsNumber jsChildId = jsChildren.getJsonObject(i).getJsonNumber("nodeId");
+                    if (jsChildId.isValid() && myNodePathCache.remove(jsChildId.intValue()) != null) {
+                        removeCachedNodePaths(jsChildId.intValue());
+                    }
+                }
+            }
+        }
+    }
+
+    public @Nullable JfxTraceWriter getTracer() {
+        return myTracer;
+    }
+
+    /**
+     * Set trace event writer for proxy activity, null to stop tracing
+     *
+     * @param tracer tracer or null
+     */
+    public void setTracer(@Nullable JfxTraceWriter tracer) {
+        myTracer = tracer;
+    }
+
+    public @NotNull Set<String> getDisabledDomains() {
+        return myDisabledDomains;
+    }
+
+    /**
+     * Turn off CDP domains for the session, for example Network and DOM for a console only session
+     * <p>
+     * Events of disabled domains are dropped without parsing, dev tools enable and disable requests for them get
+     * an empty result and other requests an error, without reaching WebView. Domains enabled before are disabled
+     * in WebView, re-enabled domains are enabled again if dev tools had them enabled. Takes effect on the
+     * dispatch thread. Runtime and Debugger domains are used by the proxy and cannot be disabled.
+     *
+     * @param domains domain names, none to enable all
+     */
+    public void setDisabledDomains(@NotNull String... domains) {
+        HashSet<String> disabledDomains = new HashSet<>(Arrays.asList(domains));
+        disabledDomains.removeAll(PROXY_DOMAINS);
+        myDispatcher.runLater(() -> {
+            Set<String> wasDisabled = myDisabledDomains;
+            myDisabledDomains = disabledDomains;
+
+            if (myDebugger != null && myDebugger.isEnabled()) {
+                for (String domain : disabledDomains) {
+                    if (!wasDisabled.contains(domain) && isDomainEnabled(domain)) {
+                        logMessage("Disabling domain %s, request %d", domain, myDebuggerId);
+                        myAsyncResultMap.put(myDebuggerId, RUNTIME_SKIP);
+                        debuggerSend(String.format("{\"id\":%d,\"method\":\"%s.disable\"}", myDebuggerId++, domain), null);
+                    }
+                }
+
+                for (String domain : wasDisabled) {
+                    if (!disabledDomains.contains(domain) && isDomainEnabled(domain)) {
+                        logMessage("Enabling domain %s, request %d", domain, myDebuggerId);
+                        myAsyncResultMap.put(myDebuggerId, RUNTIME_SKIP);
+                        debuggerSend(String.format("{\"id\":%d,\"method\":\"%s.enable\"}", myDebuggerId++, domain), null);
+                    }
+                }
+            }
+
+            updateGatedDomains();
+        });
+    }
+
+    /**
+     * @return events dropped because their domain was disabled or not enabled by dev tools
+     */
+    public long getGatedEventCount() {
+        return myGatedEventCount;
+    }
+
+    // enabled in WebView by dev tools or by the proxy and not disabled since by dev tools
+    private boolean isDomainEnabled(@NotNull String domain) {
+        Boolean clientEnabled = myClientDomains.get(domain);
+        return clientEnabled != null ? clientEnabled : myProxyEnabledDomains.contains(domain);
+    }
+
+    private void updateGatedDomains() {
+        // domains enabled by the proxy are gated until dev tools enables them, domains not enabled by anyone are left alone
+        HashSet<String> gated = new HashSet<>(myDisabledDomains);
+        for (String domain : myProxyEnabledDomains) {
+            if (!Boolean.TRUE.equals(myClientDomains.get(domain))) gated.add(domain);
+        }
+        for (Map.Entry<String, Boolean> entry : myClientDomains.entrySet()) {
+            if (!entry.getValue() && !PROXY_DOMAINS.contains(entry.getKey())) gated.add(entry.getKey());
+        }
+        myGatedDomains = gated.toArray(EMPTY_DOMAINS);
+    }
+
+    /**
+     * Track domain enable/disable requests and answer requests for domains disabled by the host
+     *
+     * @param method request method
+     * @param id     request id, negative for requests from the server
+     *
+     * @return false if request was handled and should not go to WebView
+     */
+    private boolean handleDomainRequest(@NotNull String method, int id) {
+        int pos = method.indexOf('.');
+        if (pos <= 0) return true;
+
+        String domain = method.substring(0, pos);
+        boolean isEnable = method.endsWith(".enable");
+        boolean isDisable = method.endsWith(".disable");
+
+        if (myDisabledDomains.contains(domain)) {
+            logMessage("Domain %s disabled, not sending %s", domain, method);
+            if (id > 0) {
+                devToolsCallback(isEnable || isDisable ? String.format("{\"result\":{},\"id\":%d}", id)
+                        : String.format("{\"error\":{\"code\":-32000,\"message\":\"%s domain is disabled\"},\"id\":%d}", domain, id));
+            }
+
+            if (id > 0 && (isEnable || isDisable)) {
+                myClientDomains.put(domain, isEnable);
+            }
+            return false;
+        }
+
+        if (isEnable || isDisable) {
+            if (id > 0) {
+                myClientDomains.put(domain, isEnable);
+            } else if (isEnable) {
+                myProxyEnabledDomains.add(domain);
+            } else {
+                myProxyEnabledDomains.remove(domain);
+            }
+            updateGatedDomains();
+        }
+        return true;
+    }
+
+    // raw check of event method domain, events from WebView start with the method
+    private static boolean isGatedEvent(@NotNull String message, @NotNull String[] gatedDomains) {
+        if (message.startsWith(EVENT_PREFIX)) {
+            int start = EVENT_PREFIX.length();
+            for (String domain : gatedDomains) {
+                int end = start + domain.length();
+                if (message.length() > end && message.charAt(end) == '.' && message.regionMatches(start, domain, 0, domain.length())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public @NotNull JfxDispatcher getDispatcher() {
+        return myDispatcher;
+    }
+
+    /**
+     * Set dispatcher used for thread hops, default is {@link JfxDispatcher#getInstance()}
+     *
+     * @param dispatcher dispatcher
+     */
+    public void setDispatcher(@NotNull JfxDispatcher dispatcher) {
+        myDispatcher = dispatcher;
+    }
+
     /**
      * Called before the passed in parameters are funnelled as a dummy script for evaluation
      * In the callers context, the messages coming in from WebView debugger should be monitored and
@@ -341,6 +973,11 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
     public void log(final String type, final long timestamp, final JSObject args) {
         if (!myIsEnabled || myIsShuttingDown) return;
 
+        final JfxTraceWriter tracer = myTracer;
+        if (tracer != null) {
+            tracer.instant("console." + type, JfxTraceWriter.CAT_CONSOLE, 0);
+        }
+
         // {"method":"Runtime.consoleAPICalled","params":{"type":"warning","args":[{"type":"string","value":"warning"}],"executionContextId":30,"timestamp":1519047166210.763,"stackTrace":{"callFrames":[{"functionName":"","scriptId":"684","url":"","lineNumber":0,"columnNumber":8}]}}}
         // return string to append to end of the param call so we know what Runtime.evaluate text to look for to accumulate arguments
         // the string is a comment // #frameId.N   where N 0...args.length, with the last one being just #frameId, marking that we can generate and send the consoleAPI called message
@@ -351,7 +988,14 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
             argList[i] = args.getSlot(i);
         }
 
-        final JfxConsoleApiArgs consoleArgs = new JfxConsoleApiArgs(argList, type, timestamp);
+        int[] argHandles = new int[iMax];
+        final JfxConsoleApiArgs consoleArgs;
+        if (myConsoleArgTable.stage(argList, argHandles)) {
+            consoleArgs = new JfxConsoleApiArgs(myConsoleArgTable, argHandles, type, timestamp);
+        } else {
+            // table full with args of queued logs, hold these directly until sent
+            consoleArgs = new JfxConsoleApiArgs(argList, type, timestamp);
+        }
 
         if (myWaitingForEvaluateScript) {
             // could not be sure to handle the evaluate args properly, so let the Runtime.evaluate through to the debugger
@@ -389,13 +1033,19 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
     }
 
     private void yieldDebugger(final Runnable runnable) {
-        //ApplicationManager.getApplication().invokeLater(() -> {
-        SwingUtilities.invokeLater(() -> {
-            Platform.runLater(() -> {
-                //noinspection Convert2MethodRef,FunctionalExpressionCanBeFolded
-                runnable.run();
+        final JfxDebuggerMetrics metrics = myMetrics;
+        final JfxTraceWriter tracer = myTracer;
+        final Runnable hopRunnable = tracer == null ? runnable : tracer.hop("yieldDebugger", runnable);
+
+        if (metrics == null) {
+            myDispatcher.yieldLater(hopRunnable);
+        } else {
+            final long queuedNanos = System.nanoTime();
+            myDispatcher.yieldLater(() -> {
+                metrics.fxHop(System.nanoTime() - queuedNanos);
+                hopRunnable.run();
             });
-        });
+        }
     }
 
     private void pause(@NotNull Consumer<String> onPausedRunnable) {
@@ -404,11 +1054,20 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
         }
 
         final int debuggerId = myDebuggerId++;
+        myPauseStartNanos = System.nanoTime();
         myAsyncResultMap.put(debuggerId, DEBUGGER_PAUSED); // skip the result of this pause request
-        logMessage(String.format("Pausing debugger, request %d", debuggerId));
+        logMessage("Pausing debugger, request %d", debuggerId);
+
+        final JfxTraceWriter tracer = myTracer;
+        if (tracer != null) {
+            tracer.asyncBegin("console pause", JfxTraceWriter.CAT_CONSOLE, debuggerId);
+        }
 
         myOnPausedParamsRunnable = (pausedParams) -> {
-            logMessage(String.format("Running onPaused callback for request %d", debuggerId));
+            logMessage("Running onPaused callback for request %d", debuggerId);
+            if (tracer != null) {
+                tracer.asyncEnd("console pause", JfxTraceWriter.CAT_CONSOLE, debuggerId);
+            }
             onPausedRunnable.accept(pausedParams);
         };
 
@@ -423,7 +1082,7 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
     }
 
     public void debugBreak(String evalAfter) {
-        logMessage(String.format("DebugBreak debugger, request %d", myDebuggerId));
+        logMessage("DebugBreak debugger, request %d", myDebuggerId);
         myDebuggerState = DebuggerState.PAUSED;
         debuggerSend(String.format("{\"id\":%d,\"method\":\"Debugger.pause\"}", myDebuggerId++), evalAfter);
     }
@@ -452,15 +1111,50 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
         assert myRuntimeEvaluateArgResult != null;
         BoxedJsObject result = myRuntimeEvaluateArgResult;
         myRuntimeEvaluateArgResult = null;
+
+        if (result != null && myConsoleObjectLimit > 0) {
+            BoxedJsString jsObjectId = result.evalJsString("result.result.objectId");
+            if (jsObjectId.isValid()) {
+                myConsoleObjectIds.add(jsObjectId.getString());
+                releaseConsoleObjects();
+            }
+        }
         return result;
     }
 
+    private void releaseConsoleObjects() {
+        while (myConsoleObjectLimit > 0 && myConsoleObjectIds.size() > myConsoleObjectLimit) {
+            BoxedJsObject json = BoxedJson.boxedFrom("{\"id\":0,\"method\":\"Runtime.releaseObject\",\"params\":{}}");
+            json.evalSet("id", myDebuggerId)
+                    .evalSet("params.objectId", myConsoleObjectIds.poll());
+            myAsyncResultMap.put(myDebuggerId, RUNTIME_SKIP);
+            myDebuggerId++;
+            myReleasedObjectCount++;
+            debuggerSend(json.toString(), null);
+        }
+    }
+
+    private boolean isOldPageContextId(int contextId) {
+        if (contextId > 0) {
+            for (int oldContextId : myOldPageContextIds) {
+                if (oldContextId == contextId) return true;
+            }
+        }
+        return false;
+    }
+
+    private void releaseObjectGroup(@NotNull String objectGroup) {
+        myAsyncResultMap.put(myDebuggerId, RUNTIME_SKIP);
+        debuggerSend(String.format("{\"id\":%d,\"method\":\"Runtime.releaseObjectGroup\",\"params\":{\"objectGroup\":\"%s\"}}", myDebuggerId++, objectGroup), null);
+    }
+
     private BoxedJsObject argParamJson() {
         final String evalScript = "{\"id\":0,\"method\":\"Runtime.evaluate\",\"params\":{\"expression\":\"\",\"objectGroup\":\"console\",\"includeCommandLineAPI\":true,\"silent\":false,\"contextId\":1,\"returnByValue\":false,\"generatePreview\":true,\"userGesture\":true,\"awaitPromise\":false}}";
         return BoxedJson.boxedFrom(evalScript);
     }
 
     private void collectConsoleAPIParams(JfxConsoleApiArgs consoleArgs) {
+        final long startNanos = System.nanoTime();
         final BoxedJsObject json = argParamJson();
         final String firstPauseParams = consoleArgs.getPausedParam();
         assert firstPauseParams != null;
@@ -474,7 +1168,7 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
                 final Object arg = args[i];
                 // create Runtime.evaluate with this message
 
-                logMessage(String.format("Evaluating result param[%d], request %d", i, myDebuggerId));
+                logMessage("Evaluating result param[%d], request %d", i, myDebuggerId);
                 BoxedJsObject result = getArgParam(arg, json);
                 if (result == null) return;
 
@@ -497,14 +1191,24 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
         } while (consoleArgs != null);
 
         // resume in a state appropriate to what it was when consoleLog was called.
-        logMessage(String.format("Resuming debugger after consoleLogAPI, request %d", myDebuggerId));
+        logMessage("Resuming debugger after consoleLogAPI, request %d", myDebuggerId);
         boolean wasRunning = myDebuggerState == DebuggerState.RUNNING;
         String nextState = wasRunning ? DebuggerState.RUNNING.method : DebuggerState.STEP_OVER.method;
         myAsyncResultMap.put(myDebuggerId, RUNTIME_SKIP); // skip the result of this pause request
         debuggerSend(String.format("{\"id\":%d,\"method\":\"%s\"}", myDebuggerId++, nextState), wasRunning ? EMPTY_EVAL_SCRIPT : EMPTY_EVAL_STEP_SCRIPT);
+
+        final JfxDebuggerMetrics metrics = myMetrics;
+        if (metrics != null) {
+            metrics.consolePause(System.nanoTime() - myPauseStartNanos);
+        }
+
+        final JfxTraceWriter tracer = myTracer;
+        if (tracer != null) {
+            tracer.span("console collect and resume", JfxTraceWriter.CAT_CONSOLE, startNanos, 0);
+        }
     }
 
-    private void sendConsoleAPI(JfxConsoleApiArgs consoleArgs) {
+    void sendConsoleAPI(JfxConsoleApiArgs consoleArgs) {
         // the parameters for consoleLog are not the break point stack params because it disappears before dev tools can get this information
         // so the console log api sends resolved information
         //{
@@ -544,6 +1248,7 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
         //
         // need to convert it to what dev tools expects
         //
+        final long startNanos = System.nanoTime();
         BoxedJsObject json;//{"method":"Runtime.consoleAPICalled","params":{"type":"warning","args":[{"type":"string","value":"warning"}],"executionContextId":30,"timestamp":1519047166210.763,"stackTrace":{"callFrames":[{"functionName":"","scriptId":"684","url":"","lineNumber":0,"columnNumber":8}]}}}
 
         json = BoxedJson.boxedFrom(consoleArgs.getPausedParam());
@@ -578,13 +1283,16 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
         ;
         String dataParam = consoleApiJson.toString();
 
-        logMessage("Sending console log data " + dataParam);
-        if (myCallback != null) {
-            myCallback.call(dataParam);
-        }
+        logMessage("Sending console log data %s", dataParam);
+        devToolsCallback(dataParam);
 
         consoleArgs.clearAll();
         myJfxDebuggerAccess.clearArg();
+
+        final JfxTraceWriter tracer = myTracer;
+        if (tracer != null) {
+            tracer.span("console send", JfxTraceWriter.CAT_CONSOLE, startNanos, 0);
+        }
     }
 
     /**
@@ -596,6 +1304,46 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
      */
     @Override
     public Void call(final String param) {
+        notifyTrafficListeners(JfxCdpTrafficListener.WEBVIEW_TO_PROXY, param);
+        return receiveMessage(param);
+    }
+
+    /**
+     * Handle message from the debugger or a result generated by the proxy in place of one,
+     * the latter are not passed to traffic listeners since a replay generates them again
+     *
+     * @param param json
+     *
+     * @return void
+     */
+    private Void receiveMessage(final String param) {
+        final String[] gatedDomains = myGatedDomains;
+        if (gatedDomains.length > 0 && isGatedEvent(param, gatedDomains)) {
+            myGatedEventCount++;
+            return null;
+        }
+
+        final JfxDebuggerMetrics metrics = myMetrics;
+        final JfxTraceWriter tracer = myTracer;
+        if (metrics == null && tracer == null) {
+            return processCall(param);
+        }
+
+        final long startNanos = System.nanoTime();
+        try {
+            return processCall(param);
+        } finally {
+            if (metrics != null) {
+                metrics.eventHandled(param, startNanos, System.nanoTime());
+                metrics.queueDepths(myQueuedLogRequests.size(), myAsyncResultMap.size());
+            }
+            if (tracer != null) {
+                traceMessage(tracer, JfxTraceWriter.CAT_EVENT, param, startNanos);
+            }
+        }
+    }
+
+    private Void processCall(final String param) {
         // pre-process results here and possibly change or filter calls to debugger
         String changedParam = param;
         BoxedJsObject json = BoxedJson.boxedFrom(param);
@@ -614,9 +1362,12 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
                 final BoxedJsNumber contextIdNumber = jsContext.getJsonNumber("id");
                 if (jsContext.eval("isPageContext").isTrue() && contextIdNumber.isValid()) {
                     if (myLastPageContextId > 0) {
-                        myOldPageContextIds.add(myLastPageContextId);
+                        // oldest is overwritten, reloads do not grow it
+                        myOldPageContextIds[myOldPageContextNext] = myLastPageContextId;
+                        myOldPageContextNext = (myOldPageContextNext + 1) % OLD_PAGE_CONTEXT_IDS;
                     }
                     myLastPageContextId = contextIdNumber.intValue();
+                    notifyStateChange("page context %d", myLastPageContextId);
                     Consumer<Integer> onPageContextRunnable = myOnPageContextCreatedRunnable;
                     myOnPageContextCreatedRunnable = null;
                     if (onPageContextRunnable != null) {
@@ -626,8 +1377,9 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
                 break;
             }
             case "Debugger.paused": {
-                logMessage(String.format("Got debug paused: %s", param));
+                logMessage("Got debug paused: %s", param);
                 myDebuggerIsPaused.set(true);
+                notifyStateChange("paused");
 
                 final Consumer<String> runnable = myOnPausedParamsRunnable;
                 myOnPausedParamsRunnable = null;
@@ -660,8 +1412,8 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
                                 jsRemoveBreakPoint.evalSet("id", myDebuggerId++);
                                 jsRemoveBreakPoint.evalSet("params.breakpointId", breakpointId);
                                 String removeParam = jsRemoveBreakPoint.toString();
-                                logMessage(String.format("Removing leftover breakpoint %s", removeParam));
-                                myDebugger.sendMessage(removeParam);
+                                logMessage("Removing leftover breakpoint %s", removeParam);
+                                debuggerSendMessage(removeParam);
                             }
                             // now resume
                             debuggerSend(String.format("{\"id\":%d,\"method\":\"%s\"}", myDebuggerId++, DebuggerState.RUNNING.method), "");
@@ -674,12 +1426,13 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
             }
             case "Debugger.resumed": {
                 myDebuggerIsPaused.set(false);
+                notifyStateChange("resumed");
                 Runnable runnable = myOnDebuggerResumedRunnable;
                 myOnDebuggerResumedRunnable = null;
                 if (runnable != null) {
                     yieldDebugger(runnable);
                 }
-                logMessage(String.format("Got debug resumed: %s", param));
+                logMessage("Got debug resumed: %s", param);
                 break;
             }
             case "Debugger.globalObjectCleared": {
@@ -687,6 +1440,7 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
                 //{"method":"Page.frameStartedLoading","params":{"frameId":"0.1"}}
                 // {"method":"Debugger.globalObjectCleared"}
                 myDebuggerState = DebuggerState.RUNNING;
+                notifyStateChange("global object cleared");
                 clearOnPageReload();
 
                 // we use this to inject our custom code into the global space
@@ -701,7 +1455,7 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
                         // able to debug our injected script if issuing a pause here
                         // but with external pages does crash
                         myDebugOnLoad = DebugOnLoad.NONE;
-                        logMessage(String.format("Setting pause after inject helpers, request %d", myDebuggerId));
+                        logMessage("Setting pause after inject helpers, request %d", myDebuggerId);
                         myDebuggerState = DebuggerState.PAUSED;
                         debuggerSend(String.format("{\"id\":%d,\"method\":\"Debugger.pause\"}", myDebuggerId++), null);
                     }
@@ -712,17 +1466,17 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
                     paramJson.evalSet("id", myDebuggerId)
                             .evalSet("params.expression", argScript)
                             .evalSet("params.includeCommandLineAPI", true)
-                            .evalSet("params.objectGroup", "markdownNavigatorInjected")
+                            .evalSet("params.objectGroup", INJECTED_OBJECT_GROUP)
                             .evalSet("params.contextId", pageContextId)
                     ;
 
                     myAsyncResultMap.put(myDebuggerId, REQUEST_JS_BRIDGE);
 
-                    logMessage(String.format("Injecting helper script, request %d", myDebuggerId));
+                    logMessage("Injecting helper script, request %d", myDebuggerId);
                     myDebuggerId++;
                     debuggerSend(paramJson.toString(), null);
                 };
-                logMessage(String.format("Got Debugger.globalObjectCleared: %s", param));
+                logMessage("Got Debugger.globalObjectCleared: %s", param);
                 break;
             }
             //case "Page.frameStoppedLoading": {
@@ -736,11 +1490,11 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
                 //"parentId":93,
                 // "nodes": [
                 if (jsParentId.isValid() && jsNodes.isValid()) {
-                    logMessage(String.format("Adding children of node: %d", jsParentId.intValue()));
+                    logMessage("Adding children of node: %d", jsParentId.intValue());
                     addNodeChildren(jsParentId.intValue(), jsNodes, 0, null, 0);
                 } else {
                     // did not add
-                    logMessage(String.format("Did not process children for %s", param));
+                    logMessage("Did not process children for %s", param);
                     break;
                 }
                 break;
@@ -769,15 +1523,16 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
                 boolean handled = false;
                 if (jsParentId.isValid() && jsNodeId.isValid() && jsParentParams.isValid()) {
                     // we now parse for nodes, remove this node and process it as new
-                    logMessage(String.format("Removing child %d of node: %d", jsNodeId.intValue(), jsParentId.intValue()));
+                    logMessage("Removing child %d of node: %d", jsNodeId.intValue(), jsParentId.intValue());
                     BoxedJsArray jsNodes = jsParentParams.getJsonArray("children");
                     addNodeChildren(jsParentId.intValue(), jsNodes, jsNodeId.intValue(), null, 0);
+                    removeMirrorNodes(jsNodeId.intValue());
                     handled = true;
                 }
 
                 if (!handled) {
                     // did not add
-                    logMessage(String.format("Did not insert child node for %s", param));
+                    logMessage("Did not insert child node for %s", param);
                     break;
                 }
                 break;
@@ -814,16 +1569,44 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
                 //"parentId":93,
                 // "nodes": [
                 if (jsNode.isValid() && jsPreviousNodeId.isValid() && jsParentId.isValid() && jsNodes.isValid()) {
-                    logMessage(String.format("Inserting child of node: %d: %s", jsParentId.intValue(), jsNode.toString()));
+                    logMessage("Inserting child of node: %d: %s", jsParentId.intValue(), jsNode);
                     addNodeChildren(jsParentId.intValue(), jsNodes, 0, jsNode, jsPreviousNodeId.intValue());
                     handled = true;
                 }
 
                 if (!handled) {
                     // did not add
-                    logMessage(String.format("Did not insert child node for %s", param));
+                    logMessage("Did not insert child node for %s", param);
                     break;
                 }
+                break;
+            }
+
+            // mirror only needs these to resend children for coalesced DOM event bursts
+            case "DOM.attributeModified":
+            case "DOM.attributeRemoved": {
+                if (myDomCoalescer != null) {
+                    updateMirrorAttribute(json, method.getString().equals("DOM.attributeRemoved"));
+                }
+                break;
+            }
+
+            case "DOM.characterDataModified": {
+                BoxedJsObject jsNode = myNodeIdMap.get(json.evalJsNumber("params.nodeId").intValue());
+                BoxedJsString jsValue = json.evalJsString("params.characterData");
+                if (myDomCoalescer != null && jsNode != null && jsValue.isValid()) {
+                    jsNode.put("nodeValue", jsValue.getString());
+                }
+                break;
+            }
+
+            case "DOM.childNodeCountUpdated": {
+                BoxedJsObject jsNode = myNodeIdMap.get(json.evalJsNumber("params.nodeId").intValue());
+                BoxedJsNumber jsCount = json.evalJsNumber("params.childNodeCount");
+                if (myDomCoalescer != null && jsNode != null && jsCount.isValid()) {
+                    jsNode.put("childNodeCount", jsCount.intValue());
+                }
+                break;
             }
         }
 
@@ -847,7 +1630,7 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
                         // now just harmlessly mapped to noop
                         Integer remoteId = myAsyncIdMap.get(id);
                         if (remoteId != null) {
-                            logMessage(String.format("Compile script done, request %d mapped to %d", remoteId, id));
+                            logMessage("Compile script done, request %d mapped to %d", remoteId, id);
                         }
                         break;
                     }
@@ -857,34 +1640,39 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
                         //{"result":{"result":{"type":"object","objectId":"{\"injectedScriptId\":1,\"id\":5}","className":"Object","description":"Object","preview":{"type":"object","description":"Object","lossless":true,"properties":[{"name":"x","type":"number","value":"0"},{"name":"y","type":"number","value":"79.27999999999997"}]}},"wasThrown":false},"id":36}
                         myJfxDebuggerAccess.clearArg();
                         myRuntimeEvaluateArgResult = json;
-                        logMessage(String.format("Getting Runtime.evaluate param: %s", json.toString()));
+                        logMessage("Getting Runtime.evaluate param: %s", json);
                         return null;
                     }
 
                     case RUNTIME_LOG_STACK: {
-                        logMessage(String.format("Skipping log stack trace, request %d", id));
+                        logMessage("Skipping log stack trace, request %d", id);
                         return null;
                     }
 
                     case RUNTIME_SKIP: {
-                        logMessage(String.format("Skipping request %d, %s", id, param));
+                        logMessage("Skipping request %d, %s", id, param);
                         return null;
                     }
 
                     case DEBUGGER_PAUSED: {
-                        logMessage(String.format("Skipping debug paused request %d, %s", id, param));
+                        logMessage("Skipping debug paused request %d, %s", id, param);
                         return null;
                     }
 
                     case BREAK_POINT_REMOVE: {
                         String toRemove = myBreakpointsToRemove.remove(id);
                         if (toRemove != null) {
-                            logMessage(String.format("Removing breakpoint request %d, %s", id, param));
+                            logMessage("Removing breakpoint request %d, %s", id, param);
                             myBreakpoints.remove(toRemove);
+                            notifyStateChange("breakpoint removed %s", toRemove);
                         }
                     }
 
                     case REQUEST_JS_BRIDGE: {
+                        // helper script result object is not needed, breakpoint remove falls through to here
+                        if (resultType == REQUEST_JS_BRIDGE) {
+                            releaseObjectGroup(INJECTED_OBJECT_GROUP);
+                        }
                         if (mySuppressPageReloadRequest) {
                             mySuppressPageReloadRequest = false;
                         } else {
@@ -893,7 +1681,7 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
                                 myDebugOnLoad = DebugOnLoad.NONE;
                                 debugBreak(null);
                             }
-                            logMessage(String.format("Skipping response and requesting JSBridge: %s", param));
+                            logMessage("Skipping response and requesting JSBridge: %s", param);
                             myJfxDebuggerAccess.pageReloadStarted();
                             return null;
                         }
@@ -907,15 +1695,19 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
                             BoxedJsArray jsChildren = jsRoot.get("children").asJsArray();
                             int parentId = jsRoot.getJsNumber("nodeId").asJsNumber().intValue();
 
-                            logMessage(String.format("Got DOM Root of node: %d", parentId));
+                            logMessage("Got DOM Root of node: %d", parentId);
+                            clearRegisteredNodeIds();
+                            myNodePathCache.clear();
+                            myRootNodeId = parentId;
+                            registerNodeId(parentId);
 
                             if (addNodeChildren(parentId, jsChildren, 0, null, 0)) {
-                                logMessage(String.format("Adding DOM Root node: %d", parentId));
+                                logMessage("Adding DOM Root node: %d", parentId);
                                 myNodeIdMap.put(parentId, jsRoot);
                                 myRootNodeId = parentId;
                             } else {
                                 // did not add
-                                logMessage(String.format("Did not add DOM Root node: %d, %s", parentId, param));
+                                logMessage("Did not add DOM Root node: %d, %s", parentId, param);
                             }
                         }
                     }
@@ -940,17 +1732,18 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
                 BoxedJsString breakpointId = jsResult.getJsString("breakpointId");
                 if (breakpointId.isValid()) {
                     myBreakpoints.put(breakpointId.getString(), param);
+                    notifyStateChange("breakpoint set %s", breakpointId.getString());
                 }
             } catch (Throwable throwable) {
                 String message = throwable.getMessage();
-                logMessage("Exception on getting breakpointId" + message);
+                logMessage("Exception on getting breakpointId %s", message);
             }
 
             // change id to what the remote expects if we inserted or stripped some calls
             Integer remoteId = myAsyncIdMap.remove(id);
             if (remoteId != null) {
                 json.put("id", remoteId);
-                logMessage(String.format("request %d mapped back to remote %d", id, remoteId));
+                logMessage("request %d mapped back to remote %d", id, remoteId);
                 changed = true;
             }
         }
@@ -968,22 +1761,44 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
             yieldDebugger(() -> {
                 myWaitingForEvaluateScript = false;
                 runnable.run();
-                if (myCallback != null) {
-                    myCallback.call(finalChangedParam);
-                }
+                devToolsCallback(finalChangedParam);
             });
         } else {
             myWaitingForEvaluateScript = false;
-            if (myCallback != null) {
-                myCallback.call(changedParam);
+            int domEventType = myDomCoalescer == null ? 0 : JfxDomEventCoalescer.eventType(method.getString());
+            if (domEventType != 0) {
+                myDomCoalescer.add(domEventType, json, changedParam);
+                if (!myDomFlushScheduled) {
+                    myDomFlushScheduled = true;
+                    myDispatcher.runLater(this::flushDomEvents, myDomCoalescingWindow);
+                }
+            } else {
+                devToolsCallback(changedParam);
             }
         }
 
         return null;
     }
 
+    /**
+     * Mirror children of a node, with all nested children WebView sent for them
+     *
+     * @param parentId       parent node id
+     * @param jsChildren     children of parent
+     * @param removedNode    id of child to remove or 0
+     * @param jsInsertedNode child to insert or null
+     * @param afterSibling   id of child after which to insert, 0 for first
+     *
+     * @return true if children were valid
+     */
     boolean addNodeChildren(int parentId, @NotNull BoxedJsArray jsChildren, int removedNode, @Nullable BoxedJsObject jsInsertedNode, int afterSibling) {
         if (jsChildren.isValid()) {
+            // on insert or remove the other children are already mirrored, only their ordinals change
+            boolean isMutation = removedNode != 0 || jsInsertedNode != null;
+
+            // ordinals of the parent's children change, only paths below it are affected
+            removeCachedNodePaths(parentId);
+
             int iMax = jsChildren.size();
             int offset = 0;
             int previousNodeId = 0;
@@ -1002,23 +1817,32 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
                         jsChildren.remove(i + offset);
                         offset--;
                     } else if (jsInsertedNode != null && afterSibling == previousNodeId) {
-                        jsNode.put("parentId", parentId);
-                        jsNode.put("ordinal", i + offset);
-
-                        nodeId = jsInsertedNode.getJsNumber("nodeId").intValue();
-                        myNodeIdMap.put(nodeId, jsInsertedNode);
+                        int insertedNodeId = jsInsertedNode.getJsNumber("nodeId").intValue();
+                        jsInsertedNode.put("parentId", parentId);
+                        jsInsertedNode.put("ordinal", i + offset);
+                        myNodeIdMap.put(insertedNodeId, jsInsertedNode);
+                        registerNodeId(insertedNodeId);
                         jsChildren.add(i + offset, jsInsertedNode);
 
                         offset++;
-                        // now recurse to add node's children
-                        addNodeChildren(nodeId, jsNode.getJsArray("children"), 0, null, 0);
+                        // now recurse to add inserted node's children
+                        addNodeChildren(insertedNodeId, jsInsertedNode.getJsArray("children"), 0, null, 0);
+                        jsInsertedNode = null;
+
+                        // node after the inserted one moves down
+                        jsNode.put("parentId", parentId);
+                        jsNode.put("ordinal", i + offset);
+                        myNodeIdMap.put(nodeId, jsNode);
                     } else {
                         jsNode.put("parentId", parentId);
                         jsNode.put("ordinal", i + offset);
                         myNodeIdMap.put(nodeId, jsNode);
 
                         // now recurse to add node's children
-                        addNodeChildren(jsNodeId.intValue(), jsNode.getJsArray("children"), 0, null, 0);
+                        if (!isMutation) {
+                            registerNodeId(nodeId);
+                            addNodeChildren(nodeId, jsNode.getJsArray("children"), 0, null, 0);
+                        }
                     }
 
                     previousNodeId = nodeId;
@@ -1032,6 +1856,7 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
                     jsNode.put("parentId", parentId);
                     jsNode.put("ordinal", iMax + offset);
                     myNodeIdMap.put(jsNodeId.intValue(), jsNode);
+                    registerNodeId(jsNodeId.intValue());
 
                     // now recurse to add node's children
                     addNodeChildren(jsNodeId.intValue(), jsNode.getJsArray("children"), 0, null, 0);
@@ -1046,6 +1871,7 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
             // save updated details for the node
             jsParentParams.put("children", jsChildren);
             jsParentParams.put("childCount", jsChildren.size());
+            jsParentParams.put("childNodeCount", jsChildren.size());
             myNodeIdMap.put(parentId, jsParentParams);
             return true;
         }
@@ -1054,6 +1880,30 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
 
     @Override
     public void sendMessage(final String message) {
+        notifyTrafficListeners(JfxCdpTrafficListener.DEVTOOLS_TO_PROXY, message);
+
+        final JfxDebuggerMetrics metrics = myMetrics;
+        final JfxTraceWriter tracer = myTracer;
+        if (metrics == null && tracer == null) {
+            processSendMessage(message);
+            return;
+        }
+
+        final long startNanos = System.nanoTime();
+        try {
+            processSendMessage(message);
+        } finally {
+            if (metrics != null) {
+                metrics.commandHandled(message, startNanos, System.nanoTime());
+                metrics.queueDepths(myQueuedLogRequests.size(), myAsyncResultMap.size());
+            }
+            if (tracer != null) {
+                traceMessage(tracer, JfxTraceWriter.CAT_COMMAND, message, startNanos);
+            }
+        }
+    }
+
+    private void processSendMessage(final String message) {
         // pre-process messages here and possibly filter/add other messages
         String changedMessage = message;
         BoxedJsObject json = BoxedJson.boxedFrom(message);
@@ -1066,13 +1916,17 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
 
         if (jsonMethod.isValid()) {
             String method = jsonMethod.getString();
+            if (!handleDomainRequest(method, id)) {
+                return;
+            }
+
             switch (method) {
                 case "Runtime.compileScript": {
                     // change to harmless crap and fake the response
                     json = BoxedJson.boxedFrom(String.format("{\"id\":%s,\"method\":\"Runtime.enable\"}", jsId.intValue(myDebuggerId)));
                     changed = true;
                     myAsyncResultMap.put(myDebuggerId, RUNTIME_COMPILE_SCRIPT);
-                    logMessage(String.format("Faking compileScript, request %d", jsId.intValue()));
+                    logMessage("Faking compileScript, request %d", jsId.intValue());
                     break;
                 }
 
@@ -1091,7 +1945,7 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
                     boolean isPageContext = false;
                     if (jsContextId.isValid()) {
                         int contextId = jsContextId.intValue();
-                        if (myOldPageContextIds.contains(contextId)) {
+                        if (isOldPageContextId(contextId)) {
                             contextId = myLastPageContextId;
                         }
                         isPageContext = contextId == myLastPageContextId;
@@ -1139,18 +1993,16 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
                             // this is what the real debugger responds with when getting an exception in the evaluate
                             // {"result":{"result":{"type":"object","objectId":"{\"injectedScriptId\":9,\"id\":123}","subtype":"error","className":"ReferenceError","description":"ReferenceError: Can't find variable: b"},"wasThrown":true},"id":64}
                             String param = jsResult.toString();
-                            logMessage(String.format("Returning emulated Runtime.evaluate result, request %d: %s", jsId.intValue(), param));
+                            logMessage("Returning emulated Runtime.evaluate result, request %d: %s", jsId.intValue(), param);
                             // send to dev tools
-                            if (myCallback != null) {
-                                myCallback.call(param);
-                            }
+                            devToolsCallback(param);
                         }
                         return;
                     } else {
                         // execute old code which does not give the right stack frame but won't mess up the debugger either
                         myAsyncResultMap.put(myDebuggerId, RUNTIME_EVALUATE_SCRIPT);
                         myWaitingForEvaluateScript = true;
-                        logMessage(String.format("Waiting for evaluateScript, request %d", jsId.intValue()));
+                        logMessage("Waiting for evaluateScript, request %d", jsId.intValue());
                     }
                     break;
                 }
@@ -1215,9 +2067,7 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
                                     // this one is it
                                     BoxedJsObject jsResult = BoxedJson.boxedFrom(myBreakpoints.get(key));
                                     jsResult.evalSet("id", json.get("id").asJsNumber());
-                                    if (myCallback != null) {
-                                        myCallback.call(jsResult.toString());
-                                    }
+                                    devToolsCallback(jsResult.toString());
                                     return;
                                 }
                             }
@@ -1242,12 +2092,58 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
                     break;
                 }
 
+                case "Runtime.releaseObjectGroup": {
+                    // dev tools releases console group when console is cleared
+                    // {"id":95,"method":"Runtime.releaseObjectGroup","params":{"objectGroup":"console"}}
+                    BoxedJsString jsObjectGroup = json.evalJsString("params.objectGroup");
+                    if (jsObjectGroup.isValid() && jsObjectGroup.getString().equals("console")) {
+                        myConsoleObjectIds.clear();
+                    }
+                    break;
+                }
+
                 case "DOM.getDocument": {
                     // Request:
                     // {"id":63,"method":"DOM.getDocument"}
                     // Response:
                     // {"result":{"root":{"nodeId":13,"nodeType":9,"nodeName":"#document","localName":"","nodeValue":"","childNodeCount":1,"children":[{"nodeId":14,"nodeType":1,"nodeName":"HTML","localName":"html","nodeValue":"","childNodeCount":1,"children":[{"nodeId":15,"nodeType":1,"nodeName":"HEAD","localName":"head","nodeValue":"","childNodeCount":9,"attributes":[]}],"attributes":[]}],"frameId":"0.1","documentURL":"file:///Users/vlad/src/sites/public/mn-resources/preview_2.html?2","baseURL":"file:///Users/vlad/src/sites/public/mn-resources/preview_2.html?2","xmlVersion":""}},"id":63}
                     myAsyncResultMap.put(myDebuggerId, DOM_GET_DOCUMENT);
+                    myCollapsedNodeIds.clear();
+
+                    if (myDomDocumentDepth >= 0) {
+                        // children below the depth stay as counts until dev tools requests them
+                        BoxedJsObject jsParams = json.getJsonObject("params");
+                        if (!jsParams.isValid()) {
+                            json.put("params", BoxedJson.boxedFrom(String.format("{\"depth\":%d}", myDomDocumentDepth)));
+                            changed = true;
+                        } else {
+                            BoxedJsNumber jsDepth = jsParams.getJsonNumber("depth");
+                            if (!jsDepth.isValid() || jsDepth.intValue() < 0 || jsDepth.intValue() > myDomDocumentDepth) {
+                                jsParams.put("depth", myDomDocumentDepth);
+                                changed = true;
+                            }
+                        }
+                    }
+                    break;
+                }
+
+                case "DOM.requestChildNodes": {
+                    // Request:
+                    // {"id":70,"method":"DOM.requestChildNodes","params":{"nodeId":20}}
+                    // children of a node collapsed by a coalesced refresh were already pushed by WebView, send them from the mirror
+                    BoxedJsNumber jsNodeId = json.evalJsNumber("params.nodeId");
+                    if (jsId.isValid() && jsNodeId.isValid() && myCollapsedNodeIds.remove(jsNodeId.intValue())) {
+                        int nodeId = jsNodeId.intValue();
+                        BoxedJsArray jsChildren = myNodeIdMap.getOrDefault(nodeId, BoxedJsValue.HAD_NULL_OBJECT).getJsonArray("children");
+                        if (jsChildren.isValid()) {
+                            BoxedJsNumber jsDepth = json.evalJsNumber("params.depth");
+                            int depth = jsDepth.isValid() && jsDepth.intValue() != 0 ? jsDepth.intValue() : 1;
+                            flushDomEvents();
+                            devToolsSend(String.format("{\"method\":\"DOM.setChildNodes\",\"params\":{\"parentId\":%d,\"nodes\":%s}}", nodeId, JfxDomEventCoalescer.nodesJson(jsChildren, depth, myCollapsedNodeIds)));
+                            devToolsCallback(String.format("{\"result\":{},\"id\":%d}", id));
+                            return;
+                        }
+                    }
                     break;
                 }
 
@@ -1259,7 +2155,7 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
                     if (myDebugger != null && myDebugger.isEnabled() && jsId.isValid()) {
                         int responseId = jsId.intValue();
                         yieldDebugger(() -> {
-                            call(String.format("{\"result\":{},\"id\":%d}", responseId));
+                            receiveMessage(String.format("{\"result\":{},\"id\":%d}", responseId));
                             // we now figure out the selector and invoke js helper
                             //myJfxDebuggerAccess.eval("");
                         });
@@ -1278,70 +2174,28 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
                         BoxedJsObject jsParams = json.get("params").asJsObject();
                         BoxedJsNumber jsNodeId = jsParams.getJsonNumber("nodeId");
                         if (jsNodeId.isValid()) {
-                            // build path based on index of child in parent
-                            StringBuilder sb = new StringBuilder();
-                            sb.append("[0");
-                            addNodeSelectorPath(jsNodeId.intValue(), sb);
-                            sb.append(']');
-                            String nodeSelectorPath = sb.toString();
-
-                            // validate that we get the same node after traversing the path from document
-                            if (nodeSelectorPath.length() >= 5) {
-                                // print out the nodes in the path
-                                String path = nodeSelectorPath.substring(3, nodeSelectorPath.length() - 1);
-                                String[] parts = path.split(",");
-
-                                int iMax = parts.length;
-                                int nodeId = myRootNodeId;
-
-                                for (int i = iMax; i-- > 0; ) {
-                                    int index = Integer.parseInt(parts[i]);
-                                    BoxedJsObject jsParentParams = myNodeIdMap.get(nodeId);
-                                    if (jsParentParams != null && jsParentParams.isValid()) {
-                                        BoxedJsArray jsChildren = jsParentParams.getJsonArray("children");
-                                        if (jsChildren.isValid()) {
-                                            BoxedJsObject jsNode = jsChildren.getJsonObject(index);
-                                            if (jsNode.isValid() && jsNode.getJsonNumber("nodeId").isValid()) {
-                                                nodeId = jsNode.getInt("nodeId");
-                                            } else {
-                                                logMessage(String.format("Invalid child at %d for node %d: %s", index, nodeId, jsParentParams));
-                                            }
-                                        } else {
-                                            logMessage(String.format("Invalid node children for %d: %s", nodeId, jsParentParams));
-                                        }
-                                    } else {
-                                        logMessage(String.format("No node information for %d in path %s", nodeId, path));
-                                    }
-                                }
-
-                                if (nodeId != jsNodeId.intValue()) {
-                                    logMessage(String.format("Wrong node %d for requested %d from path %s", nodeId, jsNodeId.intValue(), path));
+                            // overlay highlight uses dev tools colors, without config the helper sets a class on the element
+                            BoxedJsObject jsHighlightConfig = jsParams.getJsonObject("highlightConfig");
+                            final String highlightConfig = !myHighlightOverlay ? null : jsHighlightConfig.isValid() ? jsHighlightConfig.toString() : "{}";
+
+                            int nodeId = jsNodeId.intValue();
+                            String argScript = null;
+
+                            if (myHighlightNodeRegistry && myRegisteredNodeIds.contains(nodeId)) {
+                                // helper has the node or gets it with the queued registrations, no path needed
+                                String registrations = getNodeIdRegistrations();
+                                argScript = (registrations == null ? "" : registrations + ", ") +
+                                        "markdownNavigator.highlightNodeId(" + nodeId + ", null, " + highlightConfig + ")";
+                            } else {
+                                String nodeSelectorPath = getNodeSelectorPath(nodeId);
+                                if (nodeSelectorPath != null) {
+                                    argScript = "markdownNavigator.highlightNode(" + nodeSelectorPath + (highlightConfig == null ? "" : ", " + highlightConfig) + ")";
                                 }
+                            }
 
-                                yieldDebugger(() -> {
-                                    call(String.format("{\"result\":{},\"id\":%d}", responseId));
-                                    // we now figure out the selector and invoke js helper
-                                    BoxedJsObject paramJson = argParamJson();
-                                    // {"id":250,"method":"Runtime.evaluate","params":{"expression":"window.__MarkdownNavigatorArgs.getConsoleArg()","objectGroup":"console","includeCommandLineAPI":true,"silent":false,"contextId":4,"returnByValue":false,"generatePreview":true,"userGesture":true,"awaitPromise":false}}
-                                    //final String argScript = "window.injectedCode = { tests: () => { return \"I'm injected\"; } };";
-                                    final String argScript = "markdownNavigator.highlightNode(" + nodeSelectorPath + ")";
-                                    paramJson.evalSet("id", myDebuggerId)
-                                            .evalSet("params.expression", argScript)
-                                            .evalSet("params.includeCommandLineAPI", true)
-                                            .evalSet("params.objectGroup", "console")
-                                            .evalSet("params.userGesture", false)
-                                            .evalSet("params.generatePreview", false)
-                                            .evalSet("params.contextId", myLastPageContextId)
-                                    ;
-
-                                    logMessage(String.format("invoking highlightNode helper nodeId %d, request %d", jsNodeId.intValue(), myDebuggerId));
-
-                                    myAsyncResultMap.put(myDebuggerId, RUNTIME_SKIP);
-                                    myDebuggerId++;
-                                    debuggerSend(paramJson.toString(), null);
-                                });
-                            } else if (!nodeSelectorPath.equals("[0]")) {
-                                logMessage(String.format("Invalid path %s, for nodeId %d", nodeSelectorPath, jsNodeId.intValue()));
+                            if (argScript != null) {
+                                logMessage("invoking highlightNode helper nodeId %d", nodeId);
+                                invokeHelperScript(responseId, argScript);
                             }
                         }
                     }
@@ -1356,26 +2210,8 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
                     // {"result":{},"id":177}
                     if (myDebugger != null && myDebugger.isEnabled() && jsId.isValid()) {
                         int responseId = jsId.intValue();
-                        yieldDebugger(() -> {
-                            call(String.format("{\"result\":{},\"id\":%d}", responseId));
-                            // call jsHelper for that
-                            BoxedJsObject paramJson = argParamJson();
-                            //final String argScript = "window.injectedCode = { tests: () => { return \"I'm injected\"; } };";
-                            final String argScript = "markdownNavigator.hideHighlight()";
-                            paramJson.evalSet("id", myDebuggerId)
-                                    .evalSet("params.expression", argScript)
-                                    .evalSet("params.includeCommandLineAPI", true)
-                                    .evalSet("params.objectGroup", "console")
-                                    .evalSet("params.userGesture", false)
-                                    .evalSet("params.generatePreview", false)
-                                    .evalSet("params.contextId", myLastPageContextId)
-                            ;
-
-                            logMessage(String.format("invoking setHideHighlight helper, request %d", myDebuggerId));
-                            myAsyncResultMap.put(myDebuggerId, RUNTIME_SKIP);
-                            myDebuggerId++;
-                            debuggerSend(paramJson.toString(), null);
-                        });
+                        logMessage("invoking hideHighlight helper");
+                        invokeHelperScript(responseId, "markdownNavigator.hideHighlight()");
                     }
 
                     return;
@@ -1391,27 +2227,26 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
 
                 // will need to re-map id on result when it is ready
                 myAsyncIdMap.put(myDebuggerId, id);
-                logMessage(String.format("Mapping request %d to %d", id, myDebuggerId));
+                logMessage("Mapping request %d to %d", id, myDebuggerId);
             }
 
             myDebuggerId++;
         }
 
-        if (!myOldPageContextIds.isEmpty()) {
-            // change old page context id to latest
+        if (myOldPageContextIds[0] != 0 && message.contains("ontextId\"")) {
+            // change old page context id to latest, only messages with contextId or executionContextId are looked at
             String contextIdPath = "params.contextId";
             BoxedJsNumber contextIdNumber = json.eval(contextIdPath).asJsNumber();
-            Integer contextId = contextIdNumber.isValid() ? contextIdNumber.intValue() : null;
 
-            if (contextId == null) {
+            if (!contextIdNumber.isValid()) {
                 contextIdPath = "params.executionContextId";
                 contextIdNumber = json.eval(contextIdPath).asJsNumber();
-                contextId = contextIdNumber.isValid() ? contextIdNumber.intValue() : null;
             }
 
-            if (contextId != null && myOldPageContextIds.contains(contextId)) {
+            int contextId = contextIdNumber.isValid() ? contextIdNumber.intValue() : 0;
+            if (isOldPageContextId(contextId)) {
                 json.evalSet(contextIdPath, myLastPageContextId);
-                logMessage(String.format("Mapping old context id %d to %d", contextId, myLastPageContextId));
+                logMessage("Mapping old context id %d to %d", contextId, myLastPageContextId);
                 changed = true;
             }
         }
@@ -1428,6 +2263,124 @@ public class DevToolsDebugProxy implements Debugger, JfxDebuggerProxy, Callback<
         }
     }
 
+    /**
+     * Respond to dev tools request and evaluate a helper script in the page context
+     *
+     * @param responseId dev tools request id
+     * @param argScript  script to evaluate
+     */
+    private void invokeHelperScript(int responseId, String argScript) {
+        yieldDebugger(() -> {
+            receiveMessage(String.format("{\"result\":{},\"id\":%d}", responseId));
+            evaluateHelperScript(argScript);
+        });
+    }
+
+    private void evaluateHelperScript(String argScript) {
+        if (myDebugger != null) {
+            BoxedJsObject paramJson = argParamJson();
+            // {"id":250,"method":"Runtime.evaluate","params":{"expression":"window.__MarkdownNavigatorArgs.getConsoleArg()","objectGroup":"console","includeCommandLineAPI":true,"silent":false,"contextId":4,"returnByValue":false,"generatePreview":true,"userGesture":true,"awaitPromise":false}}
+            paramJson.evalSet("id", myDebuggerId)
+                    .evalSet("params.expression", argScript)
+                    .evalSet("params.includeCommandLineAPI", true)
+                    .evalSet("params.objectGroup", HELPER_OBJECT_GROUP)
+                    .evalSet("params.userGesture", false)
+                    .evalSet("params.generatePreview", false)
+                    .evalSet("params.contextId", myLastPageContextId)
+            ;
+
+            myAsyncResultMap.put(myDebuggerId, RUNTIME_SKIP);
+            myDebuggerId++;
+            debuggerSend(paramJson.toString(), null);
+            releaseObjectGroup(HELPER_OBJECT_GROUP);
+        }
+    }
+
+    /**
+     * Build ordinal path of the node from the document, validated against the node mirror
+     *
+     * @param nodeId node id
+     * @return path array literal or null if node has no path
+     */
+    @Nullable
+    String getNodeSelectorPath(int nodeId) {
+        int cachedSize = myNodePathCache.size();
+        String nodeSelectorPath = "[0" + getCachedNodePath(nodeId) + "]";
+
+        // validate that we get the same node after traversing the path from document, only for freshly computed paths
+        if (nodeSelectorPath.length() >= 5) {
+            if (LOG.isDebugEnabled() && myNodePathCache.size() != cachedSize) {
+                // print out the nodes in the path
+                String path = nodeSelectorPath.substring(3, nodeSelectorPath.length() - 1);
+                String[] parts = path.split(",");
+
+                int iMax = parts.length;
+                int pathNodeId = myRootNodeId;
+
+                for (int i = iMax; i-- > 0; ) {
+                    int index = Integer.parseInt(parts[i]);
+                    BoxedJsObject jsParentParams = myNodeIdMap.get(pathNodeId);
+                    if (jsParentParams != null && jsParentParams.isValid()) {
+                        BoxedJsArray jsChildren = jsParentParams.getJsonArray("children");
+                        if (jsChildren.isValid()) {
+                            BoxedJsObject jsNode = jsChildren.getJsonObject(index);
+                            if (jsNode.isValid() && jsNode.getJsonNumber("nodeId").isValid()) {
+                                pathNodeId = jsNode.getInt("nodeId");
+                            } else {
+                                logMessage("Invalid child at %d for node %d: %s", index, pathNodeId, jsParentParams);
+                            }
+                        } else {
+                            logMessage("Invalid node children for %d: %s", pathNodeId, jsParentParams);
+                        }
+                    } else {
+                        logMessage("No node information for %d in path %s", pathNodeId, path);
+                    }
+                }
+
+                if (pathNodeId != nodeId) {
+                    logMessage("Wrong node %d for requested %d from path %s", pathNodeId, nodeId, path);
+                }
+            }
+            return nodeSelectorPath;
+        } else if (!nodeSelectorPath.equals("[0]")) {
+            logMessage("Invalid path %s, for nodeId %d", nodeSelectorPath, nodeId);
+        }
+        return null;
+    }
+
+    /**
+     * Selector path of the node, same as {@link #addNodeSelectorPath(int, StringBuilder)} but cached per node
+     * <p>
+     * {@link #addNodeChildren} removes cached paths below a parent whose children change, and removed nodes
+     * take their paths with them, so a cached path is returned without walking to the root.
+     *
+     * @param nodeId node id
+     * @return path of ordinals in reverse order, each preceded by ','
+     */
+    String getCachedNodePath(int nodeId) {
+        if (nodeId == myRootNodeId) return "";
+
+        String path = myNodePathCache.get(nodeId);
+        if (path != null) return path;
+
+        path = "";
+        BoxedJsObject jsNode = myNodeIdMap.getOrDefault(nodeId, BoxedJsValue.HAD_NULL_OBJECT);
+        if (jsNode.isValid()) {
+            BoxedJsNumber jsParentId = jsNode.get("parentId").asJsNumber();
+            BoxedJsNumber jsOrdinal = jsNode.get("ordinal").asJsNumber();
+            if (jsParentId.isValid() && jsOrdinal.isValid()) {
+                int parentId = jsParentId.intValue();
+                path = "," + jsOrdinal.intValue() + getCachedNodePath(parentId);
+
+                // node whose parent is not in the mirror may be given one later, only complete paths are kept
+                if (parentId == myRootNodeId || myNodePathCache.containsKey(parentId)) {
+                    myNodePathCache.put(nodeId, path);
+                }
+            }
+        }
+        return path;
+    }
+
     void addNodeSelectorPath(int nodeId, StringBuilder out) {
         if (nodeId != myRootNodeId) {
             BoxedJsObject jsNode = myNodeIdMap.getOrDefault(nodeId, BoxedJsValue.HAD_NULL_OBJECT);
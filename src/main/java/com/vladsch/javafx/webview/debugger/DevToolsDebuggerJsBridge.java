@@ -35,30 +35,71 @@ import netscape.javascript.JSException;
 import netscape.javascript.JSObject;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.w3c.dom.Document;
+import org.w3c.dom.views.AbstractView;
+import org.w3c.dom.views.DocumentView;
 
 import javax.json.JsonValue;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 public class DevToolsDebuggerJsBridge {
+    public static final long DEFAULT_STATE_WRITE_BEHIND_MILLIS = 0; // state provider is called on every change unless enabled
+
+    // data channel of setState JSON at least markdownNavigator.dataThreshold characters, as name length:name followed by JSON
+    public static final String STATE_DATA_CHANNEL = "markdownNavigator.setState";
+
+    // helper script without state, per bridge class since script and hooks can be overridden
+    // held by the class itself so a cached script does not keep the class loader of a subclass alive
+    private static final ClassValue<AtomicReference<CachedHelperScript>> ourHelperScripts = new ClassValue<AtomicReference<CachedHelperScript>>() {
+        @Override
+        protected AtomicReference<CachedHelperScript> computeValue(final Class<?> type) {
+            return new AtomicReference<>();
+        }
+    };
+    private static final AtomicInteger ourHelperScriptsGeneration = new AtomicInteger(); // scripts cached in an older generation are read again
+
+    private static class CachedHelperScript {
+        final int generation;
+        final @NotNull String script;
+
+        CachedHelperScript(int generation, @NotNull String script) {
+            this.generation = generation;
+            this.script = script;
+        }
+    }
+
     final @NotNull JfxDebuggerAccess myJfxDebuggerAccess;
     final @NotNull JfxScriptArgAccessor myJfxScriptArgAccessor;
     final @NotNull JfxDebugProxyJsBridge myJfxDebugProxyJsBridge;
     final @NotNull WebView myWebView;
     final @NotNull DevToolsDebugProxy myDebugger;
     final @Nullable JfxScriptStateProvider myStateProvider;
+    final @Nullable JfxScriptStateCache myStateCache;
+    final @NotNull JfxDataChannel myDataChannel = new JfxDataChannel();
     @Nullable String myJSEventHandledBy;
+    boolean myStateSnapshot;
+    boolean myBulkStateString = true;
     final LogHandler LOG = LogHandler.getInstance();
 
     private final long myNanos = System.nanoTime();
     private final long myMilliNanos = System.currentTimeMillis() * 1000000;
-    @Nullable Object myConsoleArg = null;
+    final JfxArgTable myArgTable = new JfxArgTable("jsBridge", 16); // staged values are not pinned past their page
+    int myConsoleArgHandle = 0;
+    int myArgHandle = 0;
+    @Nullable Object myConsoleArg = null;  // held directly when arg table is full
     @Nullable Object myArg = null;
     @Nullable DevToolsDebuggerServer myDebuggerServer;
+    @Nullable JfxFlightRecorder myFlightRecorder;
     final int myInstance;
     final boolean mySuppressNoMarkdownException;
 
@@ -74,7 +115,135 @@ public class DevToolsDebuggerJsBridge {
         myJfxScriptArgAccessor = new JfxScriptArgAccessorDelegate(new JfxScriptArgAccessorImpl());
         myJfxDebugProxyJsBridge = new JfxDebugProxyJsBridgeDelegate(new JfxDebugProxyJsBridgeImpl());
         myDebugger = new DevToolsDebugProxy(engine, myJfxDebuggerAccess);
+        myStateCache = stateProvider == null ? null : new JfxScriptStateCache(stateProvider, myDebugger.getDispatcher(), DEFAULT_STATE_WRITE_BEHIND_MILLIS);
         mySuppressNoMarkdownException = suppressNoMarkdownException;
+        myDataChannel.setHandler(STATE_DATA_CHANNEL, this::stateData);
+    }
+
+    private void stateData(@NotNull String channel, @NotNull ByteBuffer data, boolean json) {
+        String text = StandardCharsets.UTF_8.decode(data).toString();
+        int pos = text.indexOf(':');
+        int end = pos + 1 + Integer.parseInt(text.substring(0, pos));
+        myJfxDebugProxyJsBridge.setStateJson(text.substring(pos + 1, end), text.substring(end));
+    }
+
+    /**
+     * Delay script state changes before they are passed to the state provider, so a script saving its state
+     * on every scroll event does not make a provider round trip for each one
+     * <p>
+     * Pending changes are passed before the page is reloaded, the JSBridge is connected, the debug server is
+     * stopped or state string is generated. Off by default, with a delay the host must call {@link #flushState()}
+     * before reading provider state or disposing of the WebView.
+     *
+     * @param debounceMillis delay after first change, 0 to pass every change immediately
+     */
+    public void setStateWriteBehind(long debounceMillis) {
+        if (myStateCache != null) {
+            myStateCache.setDebounceMillis(debounceMillis);
+        }
+    }
+
+    public boolean isStateSnapshot() {
+        return myStateSnapshot;
+    }
+
+    /**
+     * Inject script state as a frozen JS object when the JSBridge is connected so script
+     * {@code getState()} is served without calling the JSBridge, only changes are passed to Java
+     * <p>
+     * Values returned by {@code getState()} are frozen so scripts must not modify them. Changes made to state on
+     * the Java side should be passed with {@link #updateState(String, BoxedJsValue)}.
+     * <p>
+     * Takes effect on next {@link #connectJsBridge()}
+     *
+     * @param stateSnapshot true to use state snapshot
+     */
+    public void setStateSnapshot(boolean stateSnapshot) {
+        myStateSnapshot = stateSnapshot;
+    }
+
+    /**
+     * Change script state from Java side, call on the JavaFX application thread
+     * <p>
+     * Value is passed to state provider and the change sent to the page's state snapshot if one is used.
+     *
+     * @param name  state name
+     * @param value new value or null to remove
+     */
+    public void updateState(@NotNull String name, @Nullable BoxedJsValue value) {
+        if (myStateCache != null) {
+            myStateCache.setValue(name, value);
+
+            if (myStateSnapshot) {
+                String json = value == null || !value.isValid() ? "null" : value.toString();
+                try {
+                    myWebView.getEngine().executeScript("var markdownNavigator; markdownNavigator && markdownNavigator.updateState(" + BoxedJson.boxedOf(name).toString() + ", " + json + ");");
+                } catch (JSException e) {
+                    LOG.warn("updateState: exception", e);
+                }
+            }
+        }
+    }
+
+    public boolean isBulkStateString() {
+        return myBulkStateString;
+    }
+
+    /**
+     * Generate state string as a single {@code markdownNavigator.setStateBulk({...})} call instead of
+     * a {@code markdownNavigator.setState(name, value)} call per key
+     * <p>
+     * Bulk state is not passed back to Java when the JSBridge is connected. Helper scripts which do not
+     * implement {@code setStateBulk} get a {@code setState(name, value)} call per key from the same string.
+     *
+     * @param bulkStateString true for bulk state
+     */
+    public void setBulkStateString(boolean bulkStateString) {
+        myBulkStateString = bulkStateString;
+    }
+
+    /**
+     * Call if state provider's state was modified other than through {@link #updateState(String, BoxedJsValue)}
+     * so the cached state string is regenerated
+     */
+    public void invalidateState() {
+        if (myStateCache != null) {
+            myStateCache.invalidate();
+        }
+    }
+
+    /**
+     * Pass pending script state changes to state provider
+     */
+    public void flushState() {
+        if (myStateCache != null) {
+            myStateCache.flush();
+        }
+    }
+
+    /**
+     * Register handler for data sent by scripts with {@code markdownNavigator.sendData(channel, data)}
+     * <p>
+     * Typed arrays and values whose JSON is at least {@code markdownNavigator.dataThreshold} characters
+     * are passed in base64 chunks decoded into a {@link ByteBuffer}. {@link #STATE_DATA_CHANNEL} is used
+     * by the helper script for large script state.
+     *
+     * @param channel channel name
+     * @param handler handler or null to remove
+     */
+    public void setDataHandler(@NotNull String channel, @Nullable JfxDataChannel.Handler handler) {
+        myDataChannel.setHandler(channel, handler);
+    }
+
+    public @NotNull JfxDataChannel getDataChannel() {
+        return myDataChannel;
+    }
+
+    /**
+     * @return number of JS values staged for the debugger which were still held when their page went away
+     */
+    public long getStagedArgLeakCount() {
+        return myArgTable.getLeakCount() + myDebugger.getConsoleArgLeakCount();
     }
 
     protected @NotNull JfxDebugProxyJsBridge getJfxDebugProxyJsBridge() {
@@ -104,14 +273,32 @@ public class DevToolsDebuggerJsBridge {
      * is invoked to inform of page reloading operation.
      */
     public void connectJsBridge() {
-        JSObject jsObject = (JSObject) myWebView.getEngine().executeScript("window");
+        flushState();
+        myDataChannel.clear();
+
+        // helper script connects in one call on window, with arguments passed directly instead of through window members
+        JSObject window = getWindow();
+        if (window != null) {
+            try {
+                String stateSnapshot = myStateSnapshot && myStateCache != null ? myStateCache.getStateJson() : null;
+                window.call("markdownNavigatorConnect", myJfxScriptArgAccessor, getJfxDebugProxyJsBridge(), stateSnapshot);
+                return;
+            } catch (JSException ignored) {
+                // helper handles its own exceptions, this one is a custom helper script without markdownNavigatorConnect
+            }
+        }
+
+        // custom helper script without markdownNavigatorConnect, or no helper script
+        JSObject jsObject = window != null ? window : (JSObject) myWebView.getEngine().executeScript("window");
         jsObject.setMember("__MarkdownNavigatorArgs", myJfxScriptArgAccessor); // this interface stays for the duration, does not give much
         jsObject.setMember("__MarkdownNavigator", getJfxDebugProxyJsBridge()); // this interface is captured by the helper script since incorrect use can bring down the whole app
         try {
+            // state snapshot is set first so cached state is passed through it
+            String stateSnapshot = myStateSnapshot && myStateCache != null ? "markdownNavigator.setStateSnapshot(" + myStateCache.getStateJson() + "), " : "";
             if (mySuppressNoMarkdownException) {
-                myWebView.getEngine().executeScript("var markdownNavigator; markdownNavigator && markdownNavigator.setJsBridge(window.__MarkdownNavigator);");
+                myWebView.getEngine().executeScript("var markdownNavigator; markdownNavigator && (" + stateSnapshot + "markdownNavigator.setJsBridge(window.__MarkdownNavigator));");
             } else {
-                myWebView.getEngine().executeScript("markdownNavigator.setJsBridge(window.__MarkdownNavigator);");
+                myWebView.getEngine().executeScript(stateSnapshot + "markdownNavigator.setJsBridge(window.__MarkdownNavigator);");
             }
         } catch (JSException e) {
             e.printStackTrace();
@@ -120,6 +307,20 @@ public class DevToolsDebuggerJsBridge {
         jsObject.removeMember("__MarkdownNavigator");
     }
 
+    /**
+     * Page window from the DOM binding, does not run a script
+     *
+     * @return window or null if the engine's document does not provide it
+     */
+    private @Nullable JSObject getWindow() {
+        Document document = myWebView.getEngine().getDocument();
+        if (document instanceof DocumentView) {
+            AbstractView view = ((DocumentView) document).getDefaultView();
+            if (view instanceof JSObject) return (JSObject) view;
+        }
+        return null;
+    }
+
     /**
      * InputStream for the JSBridge Helper script to inject during page loading
      * <p>
@@ -142,6 +343,80 @@ public class DevToolsDebuggerJsBridge {
         return String.valueOf(DevToolsDebuggerJsBridge.class.getResource("/markdown-navigator.js"));
     }
 
+    /**
+     * Whether the helper script, without the state string, can be shared by all instances of this class
+     * <p>
+     * Override and return true if {@link #getJsBridgeHelperAsStream()} and prefix/suffix hooks are the same
+     * for all instances of the class, otherwise the script is read on every page load.
+     *
+     * @return true if cached per class, false by default
+     */
+    protected boolean isJsBridgeHelperScriptCached() {
+        return false;
+    }
+
+    /**
+     * Discard cached helper scripts of all classes, next page load will read them again
+     */
+    public static void invalidateJsBridgeHelperScripts() {
+        ourHelperScriptsGeneration.incrementAndGet();
+    }
+
+    /**
+     * Helper script with prefix and suffix, without the state string
+     *
+     * @return helper script text
+     */
+    public @NotNull String getJsBridgeHelperScript() {
+        String helperScript;
+        if (isJsBridgeHelperScriptCached()) {
+            AtomicReference<CachedHelperScript> cachedRef = ourHelperScripts.get(getClass());
+            int generation = ourHelperScriptsGeneration.get();
+            CachedHelperScript cached = cachedRef.get();
+            if (cached != null && cached.generation == generation) {
+                helperScript = cached.script;
+            } else {
+                helperScript = readJsBridgeHelperScript();
+                // not cached if it could not be read
+                if (helperScript != null) cachedRef.set(new CachedHelperScript(generation, helperScript));
+            }
+        } else {
+            helperScript = readJsBridgeHelperScript();
+        }
+        return helperScript == null ? "var markdownNavigator;" : helperScript;
+    }
+
+    @Nullable String readJsBridgeHelperScript() {
+        StringWriter writer = new StringWriter();
+        InputStream inputStream = getJsBridgeHelperAsStream();
+        InputStreamReader reader = new InputStreamReader(inputStream);
+
+        writer.append("var markdownNavigator;");
+
+        jsBridgeHelperScriptPrefix(writer);
+
+        try {
+            char[] buffer = new char[4096];
+            int n;
+            while (-1 != (n = reader.read(buffer))) {
+                writer.write(buffer, 0, n);
+            }
+            reader.close();
+            inputStream.close();
+        } catch (IOException e) {
+            LOG.error("jsBridgeHelperScript: exception", e);
+            return null;
+        }
+
+        jsBridgeHelperScriptSuffix(writer);
+
+        // log in the injection script and with debug break on load seems to be unstable
+        //writer.append('\n')
+        //writer.append("console.log(\"markdownNavigator: %cInjected\", \"color: #bb002f\");")
+
+        return writer.toString();
+    }
+
     /**
      * Called before standard helper script is written
      *
@@ -167,6 +442,8 @@ public class DevToolsDebuggerJsBridge {
      * not generate call backs on pageReloadStarted()
      */
     public void pageReloading() {
+        flushState();
+        myDataChannel.clear();
         if (myDebuggerServer != null) {
             myDebuggerServer.pageReloading();
         }
@@ -250,6 +527,7 @@ public class DevToolsDebuggerJsBridge {
      * @param onStopped call back to execute when the server stops, parameter true if server shut down, false if only disconnected (other instances running), null was not connected to debug server
      */
     public void stopDebugServer(@Nullable Consumer<Boolean> onStopped) {
+        flushState();
         if (myDebuggerServer != null) {
             DevToolsDebuggerServer debuggerServer = myDebuggerServer;
             myDebuggerServer = null;
@@ -265,6 +543,92 @@ public class DevToolsDebuggerJsBridge {
         }
     }
 
+    /**
+     * Enable or disable debugger metrics collection
+     *
+     * @param enable        true to collect metrics
+     * @param registerMBean true to also expose them through JMX
+     */
+    public void setDebuggerMetricsEnabled(boolean enable, boolean registerMBean) {
+        JfxDebuggerMetrics metrics = myDebugger.getMetrics();
+        if (enable) {
+            if (metrics == null) {
+                metrics = new JfxDebuggerMetrics();
+                myDebugger.setMetrics(metrics);
+            }
+            if (registerMBean) {
+                metrics.registerMBean(String.valueOf(myInstance));
+            }
+        } else if (metrics != null) {
+            myDebugger.setMetrics(null);
+            metrics.unregisterMBean();
+        }
+    }
+
+    /**
+     * Turn off CDP domains for debug sessions, see {@link DevToolsDebugProxy#setDisabledDomains(String...)}
+     *
+     * @param domains domain names, for example "Network", "DOM" for console only sessions, none to enable all
+     */
+    public void setDisabledDomains(@NotNull String... domains) {
+        myDebugger.setDisabledDomains(domains);
+    }
+
+    /**
+     * Debugger metrics
+     *
+     * @return metrics or null if not enabled
+     */
+    public @Nullable JfxDebuggerMetrics getDebuggerMetrics() {
+        return myDebugger.getMetrics();
+    }
+
+    /**
+     * Start flight recorder of recent proxy traffic and state transitions, replaces running recorder
+     * <p>
+     * The ring file survives a JVM crash, dump it with {@link JfxFlightRecorder#main(String[])}
+     *
+     * @param file   ring file
+     * @param sizeMB size of ring in MB
+     *
+     * @throws IOException if ring file could not be created
+     */
+    public void startFlightRecorder(@NotNull File file, int sizeMB) throws IOException {
+        stopFlightRecorder();
+        JfxFlightRecorder flightRecorder = new JfxFlightRecorder(file, sizeMB, JfxFlightRecorder.DEFAULT_MAX_MESSAGE_CHARS);
+        myDebugger.addTrafficListener(flightRecorder);
+        myFlightRecorder = flightRecorder;
+    }
+
+    public void stopFlightRecorder() {
+        JfxFlightRecorder flightRecorder = myFlightRecorder;
+        if (flightRecorder != null) {
+            myFlightRecorder = null;
+            myDebugger.removeTrafficListener(flightRecorder);
+            flightRecorder.close();
+        }
+    }
+
+    /**
+     * Start writing trace events of proxy activity for chrome://tracing or Perfetto, replaces running trace
+     *
+     * @param file trace json file
+     *
+     * @throws IOException if file could not be created
+     */
+    public void startTrace(@NotNull File file) throws IOException {
+        stopTrace();
+        myDebugger.setTracer(new JfxTraceWriter(file));
+    }
+
+    public void stopTrace() {
+        JfxTraceWriter tracer = myDebugger.getTracer();
+        if (tracer != null) {
+            myDebugger.setTracer(null);
+            tracer.close();
+        }
+    }
+
     public @NotNull String getDebuggerURL() {
         return myDebuggerServer != null ? myDebuggerServer.getDebugUrl() : "";
     }
@@ -330,13 +694,30 @@ public class DevToolsDebuggerJsBridge {
 
         @Override
         public String setArg(final Object arg) {
-            myConsoleArg = arg;
-            return "window.__MarkdownNavigatorArgs.getConsoleArg()";
+            myArgTable.release(myConsoleArgHandle);
+            myConsoleArgHandle = myArgTable.stage(arg);
+            if (myConsoleArgHandle == 0) {
+                myConsoleArg = arg;
+                return "window.__MarkdownNavigatorArgs.getConsoleArg()";
+            }
+            myConsoleArg = null;
+            return "window.__MarkdownNavigatorArgs.getStagedArg(" + myConsoleArgHandle + ")";
         }
 
         @Override
         public void clearArg() {
+            myArgTable.release(myConsoleArgHandle);
+            myConsoleArgHandle = 0;
+            myConsoleArg = null;
+        }
+
+        @Override
+        public void clearAllArgs() {
+            myArgTable.newGeneration();
+            myConsoleArgHandle = 0;
+            myArgHandle = 0;
             myConsoleArg = null;
+            myArg = null;
         }
 
         @Override
@@ -346,39 +727,18 @@ public class DevToolsDebuggerJsBridge {
 
         @Override
         public void pageReloadStarted() {
+            flushState();
+            myDataChannel.clear();
             DevToolsDebuggerJsBridge.this.pageReloadStarted();
         }
 
         @Override
         public String jsBridgeHelperScript() {
-            StringWriter writer = new StringWriter();
-            InputStream inputStream = getJsBridgeHelperAsStream();
-            InputStreamReader reader = new InputStreamReader(inputStream);
-
-            writer.append("var markdownNavigator;");
-
-            DevToolsDebuggerJsBridge.this.jsBridgeHelperScriptPrefix(writer);
-
-            try {
-                char[] buffer = new char[4096];
-                int n;
-                while (-1 != (n = reader.read(buffer))) {
-                    writer.write(buffer, 0, n);
-                }
-                reader.close();
-                inputStream.close();
-            } catch (IOException e) {
-                LOG.error("jsBridgeHelperScript: exception", e);
-            }
-
-            DevToolsDebuggerJsBridge.this.jsBridgeHelperScriptSuffix(writer);
-
-            // log in the injection script and with debug break on load seems to be unstable
-            //writer.append('\n')
-            //writer.append("console.log(\"markdownNavigator: %cInjected\", \"color: #bb002f\");")
-
-            appendStateString(writer);
-            return writer.toString();
+            String helperScript = getJsBridgeHelperScript();
+            StringBuilder sb = new StringBuilder(helperScript.length() + 1024);
+            sb.append(helperScript);
+            appendStateString(sb);
+            return sb.toString();
         }
     }
 
@@ -393,7 +753,18 @@ public class DevToolsDebuggerJsBridge {
      */
     public void appendStateString(Appendable sb) {
         // output all the state vars
-        if (myStateProvider != null) {
+        if (myStateCache != null && myBulkStateString) {
+            try {
+                // helper scripts without setStateBulk get a setState() call per key
+                sb.append("(function (state) {\n")
+                        .append("    if (typeof markdownNavigator.setStateBulk === \"function\") markdownNavigator.setStateBulk(state);\n")
+                        .append("    else for (var name in state) if (state.hasOwnProperty(name)) markdownNavigator.setState(name, state[name]);\n")
+                        .append("})(").append(myStateCache.getStateJson()).append(");\n");
+            } catch (IOException e) {
+                LOG.error("appendStateString: exception", e);
+            }
+        } else if (myStateProvider != null) {
+            flushState();
             try {
                 for (Map.Entry<String, JsonValue> entry : myStateProvider.getState().entrySet()) {
                     sb.append("markdownNavigator.setState(\"").append(entry.getKey()).append("\", ").append(entry.getValue().toString()).append(");\n");
@@ -425,12 +796,17 @@ public class DevToolsDebuggerJsBridge {
 
         @Override
         public @Nullable Object getArg() {
-            return myArg;
+            return myArgHandle != 0 ? myArgTable.get(myArgHandle) : myArg;
         }
 
         @Override
         public @Nullable Object getConsoleArg() {
-            return myConsoleArg;
+            return myConsoleArgHandle != 0 ? myArgTable.get(myConsoleArgHandle) : myConsoleArg;
+        }
+
+        @Override
+        public @Nullable Object getStagedArg(final int handle) {
+            return myArgTable.get(handle);
         }
     }
 
@@ -472,7 +848,7 @@ public class DevToolsDebuggerJsBridge {
                     myDebuggerServer.log(type, timestamp, args);
                 }
             } catch (Throwable e) {
-                LOG.debug(String.format("[%d] Exception in consoleLog: ", myInstance));
+                LOG.debug("[%d] Exception in consoleLog: ", myInstance);
                 LOG.error(e);
             }
         }
@@ -487,6 +863,26 @@ public class DevToolsDebuggerJsBridge {
             System.out.println(text == null ? "null" : text);
         }
 
+        @Override
+        public void dataBegin(final int streamId, final @NotNull String channel, final int byteLength, final boolean json) {
+            myDataChannel.begin(streamId, channel, byteLength, json);
+        }
+
+        @Override
+        public void dataChunk(final int streamId, final @NotNull String base64) {
+            myDataChannel.chunk(streamId, base64);
+        }
+
+        @Override
+        public void dataEnd(final int streamId) {
+            myDataChannel.end(streamId);
+        }
+
+        @Override
+        public void dataJson(final @NotNull String channel, final @NotNull String json) {
+            myDataChannel.json(channel, json);
+        }
+
         @Override
         public void setEventHandledBy(final String handledBy) {
             myJSEventHandledBy = handledBy;
@@ -495,24 +891,43 @@ public class DevToolsDebuggerJsBridge {
         @Override
         public @Nullable Object getState(final String name) {
             // convert to JSObject
-            if (myStateProvider != null) {
-                BoxedJsValue state = myStateProvider.getState().get(name);
-                if (state.isValid()) {
-                    return myWebView.getEngine().executeScript("(" + state.toString() + ")");
+            if (myStateCache != null) {
+                String json = myStateCache.getJson(name);
+                if (json != null) {
+                    return myWebView.getEngine().executeScript("(" + json + ")");
                 }
             }
             return null;
         }
 
+        @Override
+        public void setStateJson(final @NotNull String name, final @Nullable String json) {
+            if (myStateCache != null) {
+                myStateCache.setJson(name, json);
+            }
+        }
+
         @Override
         public void setState(final @NotNull String name, final @Nullable Object state) {
-            if (myStateProvider != null) {
-                BoxedJsObject scriptState = myStateProvider.getState();
-                scriptState.remove(name);
+            if (myStateCache != null) {
+                // convert JSObject to Element others to attributes
+                try {
+                    if (state instanceof JSObject) {
+                        // need to convert to JSON string, parsed when written to provider
+                        String jsonString;
+                        myArgHandle = myArgTable.stage(state);
+                        if (myArgHandle == 0) myArg = state; // table full, hold it for the call
+                        try {
+                            String arg = myArgHandle == 0 ? "window.__MarkdownNavigatorArgs.getArg()" : "window.__MarkdownNavigatorArgs.getStagedArg(" + myArgHandle + ")";
+                            jsonString = (String) myWebView.getEngine().executeScript("JSON.stringify(" + arg + ", null, 0)");
+                        } finally {
+                            myArgTable.release(myArgHandle);
+                            myArgHandle = 0;
+                            myArg = null;
+                        }
 
-                if (state != null) {
-                    // convert JSObject to Element others to attributes
-                    try {
+                        myStateCache.setJson(name, jsonString);
+                    } else {
                         BoxedJsValue value = null;
                         if (state instanceof Integer) value = BoxedJson.boxedOf((int) state);
                         else if (state instanceof Boolean) value = BoxedJson.boxedOf((boolean) state);
@@ -521,24 +936,40 @@ public class DevToolsDebuggerJsBridge {
                         else if (state instanceof Long) value = BoxedJson.boxedOf((long) state);
                         else if (state instanceof Character) value = BoxedJson.boxedOf(String.valueOf((char) state));
                         else if (state instanceof String) value = BoxedJson.boxedOf((String) state);
-                        else if (state instanceof JSObject) {
-                            // need to convert to JSON string
-                            myArg = state;
-                            String jsonString = (String) myWebView.getEngine().executeScript("JSON.stringify(window.__MarkdownNavigatorArgs.getArg(), null, 0)");
-                            myArg = null;
 
-                            value = BoxedJson.boxedFrom(jsonString);
-                        }
-                        if (value != null && value.isValid()) {
-                            scriptState.put(name, value);
-                        }
-                    } catch (Throwable e) {
-                        LOG.error(e);
+                        myStateCache.setValue(name, value);
                     }
+                } catch (Throwable e) {
+                    LOG.error(e);
                 }
+            }
+        }
 
-                // strictly a formality since the state is mutable, but lets provider save/cache or whatever else
-                myStateProvider.setState(scriptState);
+        @Override
+        public void replayBacklog(final JSObject backlog) {
+            int iMax = ((Number) backlog.getMember("length")).intValue();
+            for (int i = 0; i < iMax; i++) {
+                // a bad entry only loses itself, as when each call was made separately
+                try {
+                    JSObject call = (JSObject) backlog.getSlot(i);
+                    String method = (String) call.getSlot(0);
+                    switch (method) {
+                        case "consoleLog":
+                            consoleLog((String) call.getSlot(1), (JSObject) call.getSlot(2));
+                            break;
+                        case "println":
+                            println((String) call.getSlot(1));
+                            break;
+                        case "print":
+                            print((String) call.getSlot(1));
+                            break;
+                        case "setStateJson":
+                            setStateJson((String) call.getSlot(1), (String) call.getSlot(2));
+                            break;
+                    }
+                } catch (Throwable e) {
+                    LOG.error("replayBacklog: exception in entry " + i, e);
+                }
             }
         }
 
@@ -26,11 +26,12 @@
 package com.vladsch.javafx.webview.debugger;
 
 import com.sun.javafx.scene.web.Debugger;
-import javafx.application.Platform;
 import netscape.javascript.JSObject;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.channels.NotYetConnectedException;
 import java.util.HashMap;
@@ -40,11 +41,15 @@ public class DevToolsDebuggerServer implements JfxDebuggerConnector {
     final static HashMap<Integer, JfxWebSocketServer> ourServerMap = new HashMap<>();
 
     final Debugger myDebugger;
+    final @NotNull JfxDispatcher myDispatcher;
     JfxWebSocketServer myServer;
+    private @Nullable JfxCdpRecorder myRecorder;
+    private @Nullable JfxCdpRecorder myServerRecorder; // records dev tools traffic when debugger is not a proxy which records it itself
     final LogHandler LOG = LogHandler.getInstance();
 
     public DevToolsDebuggerServer(@NotNull Debugger debugger, int debuggerPort, final int instanceId, @Nullable Consumer<Throwable> onFailure, @Nullable Runnable onStart) {
         myDebugger = debugger;
+        myDispatcher = debugger instanceof DevToolsDebugProxy ? ((DevToolsDebugProxy) debugger).getDispatcher() : JfxDispatcher.getInstance();
         boolean freshStart = false;
 
         JfxWebSocketServer jfxWebSocketServer;
@@ -85,11 +90,16 @@ public class DevToolsDebuggerServer implements JfxDebuggerConnector {
     }
 
     private void initDebugger(int instanceId, @Nullable Runnable onStart) {
-        Platform.runLater(() -> {
+        myDispatcher.runLater(() -> {
             myDebugger.setEnabled(true);
-            myDebugger.sendMessage("{\"id\" : -1, \"method\" : \"Network.enable\"}");
+            sendToDebugger("{\"id\" : -1, \"method\" : \"Network.enable\"}");
 
             this.myDebugger.setMessageCallback(data -> {
+                JfxCdpRecorder recorder = myServerRecorder;
+                if (recorder != null) {
+                    recorder.onMessage(JfxCdpTrafficListener.PROXY_TO_DEVTOOLS, System.nanoTime(), data);
+                }
+
                 try {
                     myServer.send(this, data);
                 } catch (NotYetConnectedException e) {
@@ -100,8 +110,8 @@ public class DevToolsDebuggerServer implements JfxDebuggerConnector {
 
             if (LOG.isDebugEnabled()) {
                 String remoteUrl = getDebugUrl();
-                System.out.println("Debug session created. Debug URL: " + remoteUrl);
-                LOG.debug("Debug session created. Debug URL: " + remoteUrl);
+                AsyncLogAppender.getInstance().println("Debug session created. Debug URL: " + remoteUrl);
+                LOG.debug("Debug session created. Debug URL: %s", remoteUrl);
             }
 
             if (onStart != null) {
@@ -114,6 +124,44 @@ public class DevToolsDebuggerServer implements JfxDebuggerConnector {
         return myServer.isDebuggerConnected(this);
     }
 
+    /**
+     * Start recording CDP traffic to a file, see {@link JfxCdpRecorder}
+     * <p>
+     * Any recording in progress is stopped first.
+     *
+     * @param file file for the recording
+     *
+     * @throws IOException if file cannot be created
+     */
+    public void startRecording(@NotNull File file) throws IOException {
+        stopRecording();
+
+        JfxCdpRecorder recorder = new JfxCdpRecorder(file);
+        if (myDebugger instanceof DevToolsDebugProxy) {
+            // proxy records all four directions
+            ((DevToolsDebugProxy) myDebugger).addTrafficListener(recorder);
+        } else {
+            myServerRecorder = recorder;
+        }
+        myRecorder = recorder;
+    }
+
+    public void stopRecording() {
+        JfxCdpRecorder recorder = myRecorder;
+        if (recorder != null) {
+            myRecorder = null;
+            myServerRecorder = null;
+            if (myDebugger instanceof DevToolsDebugProxy) {
+                ((DevToolsDebugProxy) myDebugger).removeTrafficListener(recorder);
+            }
+            recorder.close();
+        }
+    }
+
+    public boolean isRecording() {
+        return myRecorder != null;
+    }
+
     @NotNull
     public String getDebugUrl() {
         // Chrome won't launch first session if we have a query string
@@ -122,14 +170,16 @@ public class DevToolsDebuggerServer implements JfxDebuggerConnector {
 
     public void stopDebugServer(@NotNull Consumer<Boolean> onStopped) {
         if (myServer != null) {
-            Platform.runLater(() -> {
+            myDispatcher.runLater(() -> {
                 Runnable action = () -> {
                     if (LOG.isDebugEnabled()) {
                         String remoteUrl = getDebugUrl();
-                        System.out.println("Debug session stopped for URL: " + remoteUrl);
+                        AsyncLogAppender.getInstance().println("Debug session stopped for URL: " + remoteUrl);
                         LOG.debug("Debug session stopped for URL: " + remoteUrl);
                     }
 
+                    stopRecording();
+
                     boolean handled = false;
                     boolean unusedServer;
 
@@ -146,7 +196,7 @@ public class DevToolsDebuggerServer implements JfxDebuggerConnector {
                             myServer.stop(1000);
                             myServer = null;
                             if (LOG.isDebugEnabled()) {
-                                System.out.println("WebView debug server shutdown.");
+                                AsyncLogAppender.getInstance().println("WebView debug server shutdown.");
                                 LOG.debug("WebView debug server shutdown.");
                             }
                         } catch (InterruptedException e) {
@@ -273,6 +323,26 @@ public class DevToolsDebuggerServer implements JfxDebuggerConnector {
     }
 
     public void sendMessageToBrowser(final String data) {
-        Platform.runLater(() -> myDebugger.sendMessage(data));
+        final JfxDebuggerMetrics metrics = myDebugger instanceof DevToolsDebugProxy ? ((DevToolsDebugProxy) myDebugger).getMetrics() : null;
+        final JfxTraceWriter tracer = myDebugger instanceof DevToolsDebugProxy ? ((DevToolsDebugProxy) myDebugger).getTracer() : null;
+        final Runnable runnable = tracer == null ? () -> sendToDebugger(data) : tracer.hop("sendMessageToBrowser", () -> sendToDebugger(data));
+
+        if (metrics == null) {
+            myDispatcher.runLater(runnable);
+        } else {
+            final long queuedNanos = System.nanoTime();
+            myDispatcher.runLater(() -> {
+                metrics.fxHop(System.nanoTime() - queuedNanos);
+                runnable.run();
+            });
+        }
+    }
+
+    private void sendToDebugger(final String data) {
+        JfxCdpRecorder recorder = myServerRecorder;
+        if (recorder != null) {
+            recorder.onMessage(JfxCdpTrafficListener.DEVTOOLS_TO_PROXY, System.nanoTime(), data);
+        }
+        myDebugger.sendMessage(data);
     }
 }
@@ -0,0 +1,171 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Bounded table of JS values staged between steps of passing them to the debugger
+ * <p>
+ * Values are referenced by handles tagged with a stamp so a released handle does not resolve to a
+ * later value in the same slot. Staged values are never evicted, staging fails when the table is full
+ * and the caller decides what to drop. The table is cleared when the page's global object is cleared,
+ * values still staged at that point outlived their page and are counted as leaks instead of staying
+ * pinned with their WebKit wrappers.
+ */
+class JfxArgTable {
+    final static LogHandler LOG = LogHandler.getInstance();
+
+    private final @NotNull String myName;
+    private final Object[] myValues;
+    private final int[] myHandles;  // handle of value in slot, 0 if free
+    private final int mySlotBits;
+    private final int mySlotMask;
+    private int myStamp;
+    private int myNext;
+    private int mySize;
+    private long myLeakCount;
+    private long myRejectedCount;
+
+    /**
+     * @param name     table name for logging
+     * @param capacity maximum staged values, rounded up to power of 2
+     */
+    JfxArgTable(@NotNull String name, int capacity) {
+        int slotBits = 1;
+        while ((1 << slotBits) < capacity) slotBits++;
+
+        myName = name;
+        mySlotBits = slotBits;
+        mySlotMask = (1 << slotBits) - 1;
+        myValues = new Object[1 << slotBits];
+        myHandles = new int[1 << slotBits];
+    }
+
+    /**
+     * @param value value to stage
+     * @return handle of value, 0 if the table is full
+     */
+    synchronized int stage(@Nullable Object value) {
+        if (mySize == myValues.length) {
+            myRejectedCount++;
+            return 0;
+        }
+        return stageFree(value);
+    }
+
+    /**
+     * Stage all values or none
+     *
+     * @param values  values to stage
+     * @param handles receives handles of values
+     * @return false if there are not enough free slots for all values, nothing is staged
+     */
+    synchronized boolean stage(@NotNull Object[] values, @NotNull int[] handles) {
+        int iMax = values.length;
+        if (mySize + iMax > myValues.length) {
+            myRejectedCount++;
+            return false;
+        }
+
+        for (int i = 0; i < iMax; i++) {
+            handles[i] = stageFree(values[i]);
+        }
+        return true;
+    }
+
+    private int stageFree(@Nullable Object value) {
+        // next free slot after the last one used, there is at least one
+        int slot = myNext;
+        while (myHandles[slot] != 0) {
+            slot = (slot + 1) & mySlotMask;
+        }
+
+        myStamp = (myStamp + 1) & (-1 >>> (mySlotBits + 1));
+        if (myStamp == 0) myStamp = 1;
+        int handle = (myStamp << mySlotBits) | slot;
+
+        myValues[slot] = value;
+        myHandles[slot] = handle;
+        myNext = (slot + 1) & mySlotMask;
+        mySize++;
+        return handle;
+    }
+
+    /**
+     * @param handle handle returned by {@link #stage(Object)}
+     * @return staged value or null if handle was released or belongs to a previous page
+     */
+    synchronized @Nullable Object get(int handle) {
+        int slot = handle & mySlotMask;
+        return handle != 0 && myHandles[slot] == handle ? myValues[slot] : null;
+    }
+
+    synchronized void release(int handle) {
+        int slot = handle & mySlotMask;
+        if (handle != 0 && myHandles[slot] == handle) {
+            myValues[slot] = null;
+            myHandles[slot] = 0;
+            mySize--;
+        }
+    }
+
+    /**
+     * Page global object was cleared, drop all staged values and count them as leaks
+     */
+    synchronized void newGeneration() {
+        if (mySize > 0) {
+            myLeakCount += mySize;
+            LOG.debug("JfxArgTable %s: %d staged values outlived their page", myName, mySize);
+
+            int iMax = myValues.length;
+            for (int i = 0; i < iMax; i++) {
+                myValues[i] = null;
+                myHandles[i] = 0;
+            }
+            mySize = 0;
+        }
+    }
+
+    synchronized int size() {
+        return mySize;
+    }
+
+    /**
+     * @return number of values still staged when their page went away
+     */
+    synchronized long getLeakCount() {
+        return myLeakCount;
+    }
+
+    /**
+     * @return number of stage calls refused because the table was full
+     */
+    synchronized long getRejectedCount() {
+        return myRejectedCount;
+    }
+}
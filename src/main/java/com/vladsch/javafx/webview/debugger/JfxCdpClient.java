@@ -0,0 +1,406 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import com.vladsch.boxed.json.BoxedJsArray;
+import com.vladsch.boxed.json.BoxedJsNumber;
+import com.vladsch.boxed.json.BoxedJsObject;
+import com.vladsch.boxed.json.BoxedJsString;
+import com.vladsch.boxed.json.BoxedJsValue;
+import com.vladsch.boxed.json.BoxedJson;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.json.JsonValue;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Client for the protocol served by {@link JfxWebSocketServer}, for driving and measuring debug sessions from code
+ * <p>
+ * Commands return futures completed with the result object when the response with the same id arrives,
+ * or exceptionally with {@link CdpException} for error responses and when the connection closes.
+ * Futures and event listeners are completed on the web socket thread and should not block.
+ */
+public class JfxCdpClient {
+    public static final String ALL_EVENTS = "*";
+
+    final static LogHandler LOG = LogHandler.getInstance();
+
+    public static class CdpException extends RuntimeException {
+        public CdpException(String message) {
+            super(message);
+        }
+    }
+
+    public static class ConsoleMessage {
+        public final @NotNull String type;
+        public final @NotNull String text;
+        public final double timestamp;
+        public final @NotNull BoxedJsArray args;
+
+        public ConsoleMessage(@NotNull String type, @NotNull String text, double timestamp, @NotNull BoxedJsArray args) {
+            this.type = type;
+            this.text = text;
+            this.timestamp = timestamp;
+            this.args = args;
+        }
+
+        @Override
+        public String toString() {
+            return type + ": " + text;
+        }
+    }
+
+    private final Client myClient;
+    private final AtomicInteger myNextId = new AtomicInteger(1);
+    private final ConcurrentHashMap<Integer, CompletableFuture<BoxedJsObject>> myPending = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CopyOnWriteArrayList<Consumer<BoxedJsObject>>> myListeners = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<ConsoleMessage> myConsoleMessages = new CopyOnWriteArrayList<>();
+    private final HashMap<String, Double> myConsoleTimers = new HashMap<>();
+    private final HashMap<String, List<Double>> myConsoleTimings = new HashMap<>();
+    private final JfxLatencyHistogram myEvaluateLatency = new JfxLatencyHistogram();
+    private boolean myConsoleCaptured;
+
+    private class Client extends WebSocketClient {
+        Client(URI uri) {
+            super(uri);
+        }
+
+        @Override
+        public void onOpen(ServerHandshake handshake) {
+
+        }
+
+        @Override
+        public void onMessage(String message) {
+            handleMessage(message);
+        }
+
+        @Override
+        public void onClose(int code, String reason, boolean remote) {
+            failPending("Connection closed: " + reason);
+        }
+
+        @Override
+        public void onError(Exception ex) {
+            LOG.debug("CDP client error", ex);
+        }
+    }
+
+    /**
+     * @param debugUrl debug url as given by {@link DevToolsDebuggerServer#getDebugUrl()} or a ws:// url
+     */
+    public JfxCdpClient(@NotNull String debugUrl) {
+        myClient = new Client(URI.create(webSocketUrl(debugUrl)));
+    }
+
+    /**
+     * Convert dev tools debug url to web socket url
+     *
+     * @param debugUrl url with ws= query parameter or ws:// url
+     *
+     * @return web socket url
+     */
+    public static @NotNull String webSocketUrl(@NotNull String debugUrl) {
+        if (debugUrl.startsWith("ws://")) return debugUrl;
+        int pos = debugUrl.indexOf("ws=");
+        if (pos < 0) {
+            throw new IllegalArgumentException("Not a debug url: " + debugUrl);
+        }
+        return "ws://" + debugUrl.substring(pos + 3);
+    }
+
+    public boolean connect() throws InterruptedException {
+        return myClient.connectBlocking();
+    }
+
+    public void close() throws InterruptedException {
+        myClient.closeBlocking();
+    }
+
+    public boolean isOpen() {
+        return myClient.isOpen();
+    }
+
+    /**
+     * Send command
+     *
+     * @param method method
+     * @param params params or null
+     *
+     * @return future of result object
+     */
+    public @NotNull CompletableFuture<BoxedJsObject> send(@NotNull String method, @Nullable BoxedJsObject params) {
+        int id = myNextId.getAndIncrement();
+        CompletableFuture<BoxedJsObject> future = new CompletableFuture<>();
+        myPending.put(id, future);
+
+        BoxedJsObject json = BoxedJson.boxedFrom("{}");
+        json.evalSet("id", id).evalSet("method", method);
+        if (params != null) {
+            json.put("params", params);
+        }
+
+        try {
+            myClient.send(json.toString());
+        } catch (RuntimeException e) {
+            myPending.remove(id);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    public @NotNull CompletableFuture<BoxedJsObject> send(@NotNull String method) {
+        return send(method, null);
+    }
+
+    /**
+     * Subscribe to event
+     *
+     * @param method   event method or {@link #ALL_EVENTS}
+     * @param listener called with the event params, or the whole message for {@link #ALL_EVENTS}
+     */
+    public void addEventListener(@NotNull String method, @NotNull Consumer<BoxedJsObject> listener) {
+        myListeners.computeIfAbsent(method, m -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    public void removeEventListener(@NotNull String method, @NotNull Consumer<BoxedJsObject> listener) {
+        CopyOnWriteArrayList<Consumer<BoxedJsObject>> listeners = myListeners.get(method);
+        if (listeners != null) {
+            listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Evaluate expression in page context, round trip time is added to {@link #getEvaluateLatency()}
+     *
+     * @param expression    expression
+     * @param returnByValue true to return value instead of remote object
+     *
+     * @return future of remote object or value in "value"
+     */
+    public @NotNull CompletableFuture<BoxedJsObject> evaluate(@NotNull String expression, boolean returnByValue) {
+        BoxedJsObject params = BoxedJson.boxedFrom("{}");
+        params.evalSet("expression", expression)
+                .evalSet("returnByValue", returnByValue)
+                .evalSet("generatePreview", false)
+                .evalSet("silent", false)
+                .evalSet("includeCommandLineAPI", true);
+
+        final long start = System.nanoTime();
+        return send("Runtime.evaluate", params).thenApply(result -> {
+            myEvaluateLatency.record(System.nanoTime() - start);
+            if (result.eval("wasThrown").isTrue()) {
+                throw new CdpException("Exception evaluating " + expression + ": " + result.eval("result.description").asJsString().getString());
+            }
+            return result.getJsObject("result");
+        });
+    }
+
+    public @NotNull CompletableFuture<BoxedJsObject> evaluate(@NotNull String expression) {
+        return evaluate(expression, true);
+    }
+
+    public @NotNull JfxLatencyHistogram getEvaluateLatency() {
+        return myEvaluateLatency;
+    }
+
+    /**
+     * @return future of breakpoint id
+     */
+    public @NotNull CompletableFuture<String> setBreakpointByUrl(@NotNull String url, int lineNumber, int columnNumber, @Nullable String condition) {
+        BoxedJsObject params = BoxedJson.boxedFrom("{}");
+        params.evalSet("url", url)
+                .evalSet("lineNumber", lineNumber)
+                .evalSet("columnNumber", columnNumber)
+                .evalSet("condition", condition == null ? "" : condition);
+        return send("Debugger.setBreakpointByUrl", params).thenApply(result -> result.getJsString("breakpointId").getString());
+    }
+
+    public @NotNull CompletableFuture<BoxedJsObject> removeBreakpoint(@NotNull String breakpointId) {
+        BoxedJsObject params = BoxedJson.boxedFrom("{}");
+        params.evalSet("breakpointId", breakpointId);
+        return send("Debugger.removeBreakpoint", params);
+    }
+
+    public @NotNull CompletableFuture<BoxedJsObject> enableDebugger() {
+        return send("Debugger.enable");
+    }
+
+    public @NotNull CompletableFuture<BoxedJsObject> pause() {
+        return send("Debugger.pause");
+    }
+
+    public @NotNull CompletableFuture<BoxedJsObject> resume() {
+        return send("Debugger.resume");
+    }
+
+    public @NotNull CompletableFuture<BoxedJsObject> stepOver() {
+        return send("Debugger.stepOver");
+    }
+
+    public @NotNull CompletableFuture<BoxedJsObject> stepInto() {
+        return send("Debugger.stepInto");
+    }
+
+    public @NotNull CompletableFuture<BoxedJsObject> stepOut() {
+        return send("Debugger.stepOut");
+    }
+
+    /**
+     * Enable runtime and start capturing console messages and console.time/timeEnd timings
+     *
+     * @return future of Runtime.enable result
+     */
+    public @NotNull CompletableFuture<BoxedJsObject> captureConsole() {
+        synchronized (myConsoleMessages) {
+            if (!myConsoleCaptured) {
+                myConsoleCaptured = true;
+                addEventListener("Runtime.consoleAPICalled", this::consoleApiCalled);
+            }
+        }
+        return send("Runtime.enable");
+    }
+
+    public @NotNull List<ConsoleMessage> getConsoleMessages() {
+        return new ArrayList<>(myConsoleMessages);
+    }
+
+    public void clearConsoleMessages() {
+        myConsoleMessages.clear();
+        synchronized (myConsoleTimings) {
+            myConsoleTimers.clear();
+            myConsoleTimings.clear();
+        }
+    }
+
+    /**
+     * Durations between console.time(label) and console.timeEnd(label) from the console message timestamps
+     *
+     * @return map of label to durations in milliseconds
+     */
+    public @NotNull Map<String, List<Double>> getConsoleTimings() {
+        synchronized (myConsoleTimings) {
+            HashMap<String, List<Double>> timings = new HashMap<>();
+            for (Map.Entry<String, List<Double>> entry : myConsoleTimings.entrySet()) {
+                timings.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+            }
+            return timings;
+        }
+    }
+
+    private void consoleApiCalled(BoxedJsObject params) {
+        String type = params.getJsString("type").getString();
+        BoxedJsArray args = params.getJsArray("args");
+        double timestamp = params.getJsNumber("timestamp").isValid() ? params.getJsNumber("timestamp").doubleValue() : 0;
+
+        StringBuilder sb = new StringBuilder();
+        for (JsonValue arg : args) {
+            BoxedJsObject jsArg = BoxedJson.boxedOf(arg).asJsObject();
+            BoxedJsValue value = jsArg.get("value");
+            if (sb.length() > 0) sb.append(' ');
+            if (value instanceof BoxedJsString) {
+                sb.append(((BoxedJsString) value).getString());
+            } else if (value.isValid()) {
+                sb.append(value.toString());
+            } else {
+                sb.append(jsArg.getJsString("description").getString());
+            }
+        }
+
+        String text = sb.toString();
+        myConsoleMessages.add(new ConsoleMessage(type, text, timestamp, args));
+
+        if (type.equals("time") || type.equals("timeEnd")) {
+            String label = text.isEmpty() ? "default" : text;
+            synchronized (myConsoleTimings) {
+                if (type.equals("time")) {
+                    myConsoleTimers.put(label, timestamp);
+                } else {
+                    Double start = myConsoleTimers.remove(label);
+                    if (start != null) {
+                        myConsoleTimings.computeIfAbsent(label, l -> new ArrayList<>()).add(timestamp - start);
+                    }
+                }
+            }
+        }
+    }
+
+    private void handleMessage(String message) {
+        BoxedJsObject json = BoxedJson.boxedFrom(message);
+        BoxedJsString method = json.getJsString("method");
+
+        if (method.isValid()) {
+            BoxedJsObject params = json.getJsObject("params");
+            notifyListeners(method.getString(), params);
+            notifyListeners(ALL_EVENTS, json);
+        } else {
+            BoxedJsNumber id = json.getJsNumber("id");
+            CompletableFuture<BoxedJsObject> future = id.isValid() ? myPending.remove(id.intValue()) : null;
+            if (future != null) {
+                BoxedJsObject error = json.getJsObject("error");
+                if (error.isValid()) {
+                    future.completeExceptionally(new CdpException(error.getJsString("message").getString()));
+                } else {
+                    future.complete(json.getJsObject("result"));
+                }
+            }
+        }
+    }
+
+    private void notifyListeners(String method, BoxedJsObject params) {
+        CopyOnWriteArrayList<Consumer<BoxedJsObject>> listeners = myListeners.get(method);
+        if (listeners != null) {
+            for (Consumer<BoxedJsObject> listener : listeners) {
+                try {
+                    listener.accept(params);
+                } catch (Throwable t) {
+                    LOG.error("Exception in CDP event listener", t);
+                }
+            }
+        }
+    }
+
+    private void failPending(String reason) {
+        for (Integer id : new ArrayList<>(myPending.keySet())) {
+            CompletableFuture<BoxedJsObject> future = myPending.remove(id);
+            if (future != null) {
+                future.completeExceptionally(new CdpException(reason));
+            }
+        }
+    }
+}
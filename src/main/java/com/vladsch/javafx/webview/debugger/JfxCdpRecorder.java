@@ -0,0 +1,163 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records CDP traffic in all four directions to an append-only file
+ * <p>
+ * File format: int magic, long start time in epoch millis, then records of
+ * byte direction, long nanos since recording start, int length, UTF-8 message bytes.
+ */
+public class JfxCdpRecorder implements JfxCdpTrafficListener {
+    public static final int MAGIC = 0x4A434450; // JCDP
+
+    private final DataOutputStream myOut;
+    private final long myStartNanos;
+    private final LogHandler LOG = LogHandler.getInstance();
+    private boolean myClosed;
+
+    public static class Record {
+        public final int direction;
+        public final long nanos;
+        public final @NotNull String message;
+
+        public Record(final int direction, final long nanos, @NotNull final String message) {
+            this.direction = direction;
+            this.nanos = nanos;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d %d.%06d %s", direction, nanos / 1000000, nanos % 1000000, message);
+        }
+    }
+
+    public JfxCdpRecorder(@NotNull File file) throws IOException {
+        // append only, a new recording goes to a new file
+        myOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, false), 65536));
+        myStartNanos = System.nanoTime();
+        myOut.writeInt(MAGIC);
+        myOut.writeLong(System.currentTimeMillis());
+    }
+
+    @Override
+    public void onMessage(final int direction, final long nanos, final String message) {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        synchronized (myOut) {
+            if (myClosed) return;
+            try {
+                myOut.writeByte(direction);
+                myOut.writeLong(nanos - myStartNanos);
+                myOut.writeInt(bytes.length);
+                myOut.write(bytes);
+            } catch (IOException e) {
+                LOG.error("JfxCdpRecorder: write failed, recording stopped", e);
+                close();
+            }
+        }
+    }
+
+    public void flush() {
+        synchronized (myOut) {
+            if (myClosed) return;
+            try {
+                myOut.flush();
+            } catch (IOException e) {
+                LOG.error("JfxCdpRecorder: flush failed", e);
+            }
+        }
+    }
+
+    public void close() {
+        synchronized (myOut) {
+            if (myClosed) return;
+            myClosed = true;
+            try {
+                myOut.close();
+            } catch (IOException e) {
+                LOG.error("JfxCdpRecorder: close failed", e);
+            }
+        }
+    }
+
+    @NotNull
+    public static List<Record> read(@NotNull File file) throws IOException {
+        try (InputStream inputStream = new FileInputStream(file)) {
+            return read(inputStream);
+        }
+    }
+
+    /**
+     * Read a recording, a truncated last record is ignored
+     *
+     * @param inputStream recording
+     *
+     * @return records in recorded order
+     *
+     * @throws IOException if not a recording or read fails
+     */
+    @NotNull
+    public static List<Record> read(@NotNull InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream, 65536));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a CDP recording");
+        }
+        in.readLong();
+
+        ArrayList<Record> records = new ArrayList<>();
+        try {
+            //noinspection InfiniteLoopStatement
+            while (true) {
+                int direction = in.readByte();
+                long nanos = in.readLong();
+                int length = in.readInt();
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                records.add(new Record(direction, nanos, new String(bytes, StandardCharsets.UTF_8)));
+            }
+        } catch (EOFException ignored) {
+            // end of recording
+        }
+        return records;
+    }
+}
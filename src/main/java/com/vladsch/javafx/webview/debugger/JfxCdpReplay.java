@@ -0,0 +1,292 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import com.sun.javafx.scene.web.Debugger;
+import javafx.util.Callback;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replay a {@link JfxCdpRecorder} recording through a {@link DevToolsDebugProxy} without WebView or Dev Tools
+ * <p>
+ * Dev Tools messages are fed to {@link DevToolsDebugProxy#sendMessage(String)}, WebView messages to
+ * {@link DevToolsDebugProxy#call(String)}. WebView debugger responds synchronously while a message is sent
+ * to it, so WebView messages recorded within the sync window after a proxy to WebView message are delivered
+ * from the scripted debugger's sendMessage, the rest are fed in recorded order.
+ * <p>
+ * Messages the proxy sends to WebView and Dev Tools are compared to the recording to detect behavior drift.
+ */
+public class JfxCdpReplay {
+    public static final long DEFAULT_SYNC_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    private final List<JfxCdpRecorder.Record> myRecords;
+    private final JfxDebuggerAccess myJfxDebuggerAccess;
+    private long mySyncWindowNanos = DEFAULT_SYNC_WINDOW_NANOS;
+
+    // per run state
+    private boolean[] myConsumed;
+    private int myWebViewCursor;
+    private DevToolsDebugProxy myProxy;
+    private final ArrayList<String> myWebViewSent = new ArrayList<>();
+    private final ArrayList<String> myDevToolsSent = new ArrayList<>();
+
+    public static class Result {
+        public final int messages;
+        public final long elapsedNanos;
+        public final long[] handlingNanos;
+        public final int webViewDrift;
+        public final int devToolsDrift;
+        public final @Nullable String firstDrift;
+
+        Result(int messages, long elapsedNanos, long[] handlingNanos, int webViewDrift, int devToolsDrift, @Nullable String firstDrift) {
+            this.messages = messages;
+            this.elapsedNanos = elapsedNanos;
+            this.handlingNanos = handlingNanos;
+            this.webViewDrift = webViewDrift;
+            this.devToolsDrift = devToolsDrift;
+            this.firstDrift = firstDrift;
+        }
+
+        public boolean hasDrift() {
+            return webViewDrift != 0 || devToolsDrift != 0;
+        }
+
+        public long percentileNanos(double percentile) {
+            if (handlingNanos.length == 0) return 0;
+            int index = (int) Math.min(handlingNanos.length - 1, Math.ceil(percentile / 100.0 * handlingNanos.length) - 1);
+            return handlingNanos[Math.max(0, index)];
+        }
+
+        @Override
+        public String toString() {
+            double seconds = elapsedNanos / 1e9;
+            return String.format("messages: %d, elapsed: %.3f s, %.0f msg/s, handling p50: %d us, p99: %d us, max: %d us, WebView drift: %d, Dev Tools drift: %d%s",
+                    messages, seconds, seconds > 0 ? messages / seconds : 0.0,
+                    percentileNanos(50) / 1000, percentileNanos(99) / 1000, percentileNanos(100) / 1000,
+                    webViewDrift, devToolsDrift,
+                    firstDrift == null ? "" : "\nfirst drift: " + firstDrift);
+        }
+    }
+
+    public JfxCdpReplay(@NotNull List<JfxCdpRecorder.Record> records) {
+        this(records, null);
+    }
+
+    /**
+     * @param records            recording
+     * @param jfxDebuggerAccess  access used by the proxy, null for one without JavaScript evaluation
+     */
+    public JfxCdpReplay(@NotNull List<JfxCdpRecorder.Record> records, @Nullable JfxDebuggerAccess jfxDebuggerAccess) {
+        myRecords = records;
+        myJfxDebuggerAccess = jfxDebuggerAccess != null ? jfxDebuggerAccess : new ReplayDebuggerAccess();
+    }
+
+    public void setSyncWindowNanos(final long syncWindowNanos) {
+        mySyncWindowNanos = syncWindowNanos;
+    }
+
+    /**
+     * Replay the recording on the calling thread
+     *
+     * @param realTime true to keep recorded timing, false to replay as fast as possible
+     *
+     * @return replay result
+     *
+     * @throws InterruptedException if interrupted while waiting in real time mode
+     */
+    public Result run(boolean realTime) throws InterruptedException {
+        int iMax = myRecords.size();
+        myConsumed = new boolean[iMax];
+        myWebViewCursor = -1;
+        myWebViewSent.clear();
+        myDevToolsSent.clear();
+
+        JfxDispatcher.Queued dispatcher = new JfxDispatcher.Queued();
+        ScriptedDebugger debugger = new ScriptedDebugger();
+        myProxy = new DevToolsDebugProxy(debugger, myJfxDebuggerAccess);
+        myProxy.setDispatcher(dispatcher);
+        myProxy.setMessageCallback(data -> {
+            myDevToolsSent.add(data);
+            return null;
+        });
+        myProxy.setEnabled(true);
+
+        long[] handling = new long[iMax];
+        int messages = 0;
+        long firstNanos = iMax > 0 ? myRecords.get(0).nanos : 0;
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iMax; i++) {
+            if (myConsumed[i]) continue;
+
+            JfxCdpRecorder.Record record = myRecords.get(i);
+            if (record.direction != JfxCdpTrafficListener.DEVTOOLS_TO_PROXY && record.direction != JfxCdpTrafficListener.WEBVIEW_TO_PROXY) {
+                continue;
+            }
+
+            if (realTime) {
+                long delay = (record.nanos - firstNanos) - (System.nanoTime() - start);
+                if (delay > 0) {
+                    TimeUnit.NANOSECONDS.sleep(delay);
+                }
+            }
+
+            myConsumed[i] = true;
+            long messageStart = System.nanoTime();
+            if (record.direction == JfxCdpTrafficListener.DEVTOOLS_TO_PROXY) {
+                myProxy.sendMessage(record.message);
+            } else {
+                myProxy.call(record.message);
+            }
+            dispatcher.runPending();
+            handling[messages++] = System.nanoTime() - messageStart;
+        }
+
+        // let any remaining hops complete
+        dispatcher.runPending();
+        long elapsed = System.nanoTime() - start;
+
+        ArrayList<String> expectedWebView = new ArrayList<>();
+        ArrayList<String> expectedDevTools = new ArrayList<>();
+        for (JfxCdpRecorder.Record record : myRecords) {
+            if (record.direction == JfxCdpTrafficListener.PROXY_TO_WEBVIEW) expectedWebView.add(record.message);
+            else if (record.direction == JfxCdpTrafficListener.PROXY_TO_DEVTOOLS) expectedDevTools.add(record.message);
+        }
+
+        String[] firstDrift = new String[] { null };
+        int webViewDrift = drift("WebView", expectedWebView, myWebViewSent, firstDrift);
+        int devToolsDrift = drift("Dev Tools", expectedDevTools, myDevToolsSent, firstDrift);
+
+        long[] handlingNanos = Arrays.copyOf(handling, messages);
+        Arrays.sort(handlingNanos);
+        myProxy = null;
+        return new Result(messages, elapsed, handlingNanos, webViewDrift, devToolsDrift, firstDrift[0]);
+    }
+
+    private static int drift(String target, List<String> expected, List<String> actual, String[] firstDrift) {
+        int iMax = Math.min(expected.size(), actual.size());
+        int count = 0;
+        for (int i = 0; i < iMax; i++) {
+            if (!expected.get(i).equals(actual.get(i))) {
+                if (firstDrift[0] == null) {
+                    firstDrift[0] = String.format("to %s message %d\nexpected: %s\n  actual: %s", target, i, expected.get(i), actual.get(i));
+                }
+                count++;
+            }
+        }
+
+        if (firstDrift[0] == null && expected.size() != actual.size()) {
+            firstDrift[0] = String.format("to %s expected %d messages, got %d", target, expected.size(), actual.size());
+        }
+        return count + Math.abs(expected.size() - actual.size());
+    }
+
+    // deliver WebView responses recorded right after the matching proxy to WebView message
+    void deliverResponses(String message) {
+        myWebViewSent.add(message);
+
+        int iMax = myRecords.size();
+        int sentIndex = -1;
+        for (int i = myWebViewCursor + 1; i < iMax; i++) {
+            if (myRecords.get(i).direction == JfxCdpTrafficListener.PROXY_TO_WEBVIEW) {
+                sentIndex = i;
+                break;
+            }
+        }
+
+        if (sentIndex < 0) return;
+        myWebViewCursor = sentIndex;
+        long sentNanos = myRecords.get(sentIndex).nanos;
+
+        for (int i = sentIndex + 1; i < iMax; i++) {
+            JfxCdpRecorder.Record record = myRecords.get(i);
+            if (record.nanos - sentNanos > mySyncWindowNanos) break;
+            if (record.direction == JfxCdpTrafficListener.DEVTOOLS_TO_PROXY) break;
+            if (record.direction == JfxCdpTrafficListener.PROXY_TO_WEBVIEW && i > myWebViewCursor) break;
+
+            if (record.direction == JfxCdpTrafficListener.WEBVIEW_TO_PROXY && !myConsumed[i]) {
+                myConsumed[i] = true;
+                myProxy.call(record.message);
+            }
+        }
+    }
+
+    private class ScriptedDebugger implements Debugger {
+        private Callback<String, Void> myCallback;
+        private boolean myEnabled;
+
+        ScriptedDebugger() {}
+
+        @Override
+        public boolean isEnabled() {
+            return myEnabled;
+        }
+
+        @Override
+        public void setEnabled(final boolean enabled) {
+            myEnabled = enabled;
+        }
+
+        @Override
+        public void sendMessage(final String message) {
+            deliverResponses(message);
+        }
+
+        @Override
+        public Callback<String, Void> getMessageCallback() {
+            return myCallback;
+        }
+
+        @Override
+        public void setMessageCallback(final Callback<String, Void> callback) {
+            myCallback = callback;
+        }
+    }
+
+    private static class ReplayDebuggerAccess implements JfxDebuggerAccess {
+        ReplayDebuggerAccess() {}
+
+        @Override public String setArg(final Object arg) {return "window.__MarkdownNavigatorArgs.getConsoleArg()";}
+
+        @Override public void clearArg() {}
+
+        @Override public Object eval(final String script) {return null;}
+
+        @Override public void pageReloadStarted() {}
+
+        @Override public String jsBridgeHelperScript() {return "";}
+
+        @Override public void onConnectionOpen() {}
+
+        @Override public void onConnectionClosed() {}
+    }
+}
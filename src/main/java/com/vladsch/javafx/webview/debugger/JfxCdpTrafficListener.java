@@ -0,0 +1,55 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+/**
+ * Listener for CDP messages and state transitions of the debug server and proxy
+ * <p>
+ * Called on the thread sending or receiving the message, implementations should not block.
+ */
+public interface JfxCdpTrafficListener {
+    int DEVTOOLS_TO_PROXY = 0;
+    int PROXY_TO_WEBVIEW = 1;
+    int WEBVIEW_TO_PROXY = 2;
+    int PROXY_TO_DEVTOOLS = 3;
+
+    /**
+     * @param direction one of {@link #DEVTOOLS_TO_PROXY}, {@link #PROXY_TO_WEBVIEW}, {@link #WEBVIEW_TO_PROXY}, {@link #PROXY_TO_DEVTOOLS}
+     * @param nanos     {@link System#nanoTime()} of the message
+     * @param message   json message
+     */
+    void onMessage(int direction, long nanos, String message);
+
+    /**
+     * Proxy state transition: pause/resume, page context change, breakpoint change
+     *
+     * @param nanos {@link System#nanoTime()} of the transition
+     * @param state description of the new state
+     */
+    default void onStateChange(long nanos, String state) {
+
+    }
+}
@@ -26,9 +26,12 @@
 package com.vladsch.javafx.webview.debugger;
 
 import com.vladsch.boxed.json.BoxedJsValue;
+import org.jetbrains.annotations.Nullable;
 
 public class JfxConsoleApiArgs {
-    private final Object[] myArgs;
+    private final Object[] myArgs;     // null when args are staged in myArgTable
+    private final int[] myArgHandles;
+    private final @Nullable JfxArgTable myArgTable;
     private final String myLogType;
     private final BoxedJsValue[] myJsonParams;
     private long myTimestamp;
@@ -36,12 +39,30 @@ public class JfxConsoleApiArgs {
 
     public JfxConsoleApiArgs(final Object[] args, final String logType, final long timestamp) {
         myArgs = args;
+        myArgHandles = null;
+        myArgTable = null;
         myLogType = logType;
         myJsonParams = new BoxedJsValue[args.length];
         myTimestamp = timestamp;
         myPausedParam = null;
     }
 
+    /**
+     * Args are staged in the table so they are not pinned by this instance after the page goes away
+     *
+     * @param argTable   table holding the args
+     * @param argHandles handles of args staged with {@link JfxArgTable#stage(Object[], int[])}
+     */
+    JfxConsoleApiArgs(final JfxArgTable argTable, final int[] argHandles, final String logType, final long timestamp) {
+        myArgs = null;
+        myArgTable = argTable;
+        myArgHandles = argHandles;
+        myLogType = logType;
+        myJsonParams = new BoxedJsValue[argHandles.length];
+        myTimestamp = timestamp;
+        myPausedParam = null;
+    }
+
     public String getPausedParam() {
         return myPausedParam;
     }
@@ -55,9 +76,13 @@ public class JfxConsoleApiArgs {
     }
 
     public void clearAll() {
-        int iMax = myArgs.length;
+        int iMax = myJsonParams.length;
         for (int i = 0; i < iMax; i++) {
-            myArgs[i] = null;
+            if (myArgTable != null) {
+                myArgTable.release(myArgHandles[i]);
+            } else {
+                myArgs[i] = null;
+            }
             myJsonParams[i] = null;
         }
     }
@@ -67,6 +92,15 @@ public class JfxConsoleApiArgs {
     }
 
     public Object[] getArgs() {
+        if (myArgTable != null) {
+            // args of a previous page resolve to null
+            int iMax = myArgHandles.length;
+            Object[] args = new Object[iMax];
+            for (int i = 0; i < iMax; i++) {
+                args[i] = myArgTable.get(myArgHandles[i]);
+            }
+            return args;
+        }
         return myArgs;
     }
 
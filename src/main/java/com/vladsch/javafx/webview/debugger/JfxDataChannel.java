@@ -0,0 +1,159 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+
+/**
+ * Receives data sent by scripts with {@code markdownNavigator.sendData(channel, data)} and passes it
+ * to the handler registered for the channel
+ * <p>
+ * Typed arrays and JSON above the script's {@code dataThreshold} arrive as base64 chunks decoded
+ * straight into a {@link ByteBuffer}, without the whole payload being a Java string. Smaller values
+ * arrive as a single JSON string.
+ */
+public class JfxDataChannel {
+    public interface Handler {
+        /**
+         * @param channel channel name
+         * @param data    received bytes, position 0, limit the data length
+         * @param json    true if data is UTF-8 JSON text, false for typed array or ArrayBuffer bytes
+         */
+        void onData(@NotNull String channel, @NotNull ByteBuffer data, boolean json);
+    }
+
+    private static class Stream {
+        final @NotNull String channel;
+        final @NotNull Handler handler;
+        final boolean json;
+        @NotNull ByteBuffer buffer;
+
+        Stream(@NotNull String channel, @NotNull Handler handler, int byteLength, boolean json) {
+            this.channel = channel;
+            this.handler = handler;
+            this.json = json;
+            this.buffer = ByteBuffer.allocate(byteLength);
+        }
+    }
+
+    private final LogHandler LOG = LogHandler.getInstance();
+    private final HashMap<String, Handler> myHandlers = new HashMap<>();
+    private final HashMap<Integer, Stream> myStreams = new HashMap<>();
+    private long myBytesReceived;
+
+    /**
+     * @param channel channel name
+     * @param handler handler or null to remove, data sent to channels without a handler is dropped
+     */
+    public synchronized void setHandler(@NotNull String channel, @Nullable Handler handler) {
+        if (handler == null) {
+            myHandlers.remove(channel);
+        } else {
+            myHandlers.put(channel, handler);
+        }
+    }
+
+    public synchronized long getBytesReceived() {
+        return myBytesReceived;
+    }
+
+    /**
+     * Drop partially received data, page is going away
+     */
+    public synchronized void clear() {
+        if (!myStreams.isEmpty()) {
+            LOG.debug("JfxDataChannel: dropping %d incomplete streams", myStreams.size());
+            myStreams.clear();
+        }
+    }
+
+    void begin(int streamId, @NotNull String channel, int byteLength, boolean json) {
+        synchronized (this) {
+            Handler handler = myHandlers.get(channel);
+            if (handler == null) {
+                LOG.debug("JfxDataChannel: no handler for %s, dropping stream %d", channel, streamId);
+                return;
+            }
+            // JSON length is in characters, buffer grows if UTF-8 is longer
+            myStreams.put(streamId, new Stream(channel, handler, Math.max(byteLength, 0), json));
+        }
+    }
+
+    void chunk(int streamId, @NotNull String base64) {
+        byte[] bytes = Base64.getDecoder().decode(base64);
+        synchronized (this) {
+            Stream stream = myStreams.get(streamId);
+            if (stream == null) return;
+
+            if (stream.buffer.remaining() < bytes.length) {
+                ByteBuffer buffer = ByteBuffer.allocate(Math.max(stream.buffer.position() + bytes.length, stream.buffer.capacity() * 2));
+                stream.buffer.flip();
+                buffer.put(stream.buffer);
+                stream.buffer = buffer;
+            }
+            stream.buffer.put(bytes);
+            myBytesReceived += bytes.length;
+        }
+    }
+
+    void end(int streamId) {
+        Stream stream;
+        synchronized (this) {
+            stream = myStreams.remove(streamId);
+        }
+
+        if (stream != null) {
+            stream.buffer.flip();
+            dispatch(stream.handler, stream.channel, stream.buffer, stream.json);
+        }
+    }
+
+    void json(@NotNull String channel, @NotNull String json) {
+        Handler handler;
+        ByteBuffer data = ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8));
+        synchronized (this) {
+            handler = myHandlers.get(channel);
+            if (handler == null) return;
+            myBytesReceived += data.limit();
+        }
+
+        dispatch(handler, channel, data, true);
+    }
+
+    private void dispatch(@NotNull Handler handler, @NotNull String channel, @NotNull ByteBuffer data, boolean json) {
+        try {
+            handler.onData(channel, data, json);
+        } catch (Throwable e) {
+            LOG.error(e);
+        }
+    }
+}
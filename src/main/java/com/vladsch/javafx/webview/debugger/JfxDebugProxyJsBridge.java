@@ -35,4 +35,50 @@ public interface JfxDebugProxyJsBridge {
     void setEventHandledBy(String handledBy);
     Object getState(String name);
     void setState(String name, Object state);
+
+    /**
+     * Set state from JSON text, used by the helper script so objects are not passed back to JS to be stringified
+     *
+     * @param name state key
+     * @param json JSON of state or null to remove
+     */
+    void setStateJson(String name, String json);
+
+    /**
+     * Start of data sent by {@code markdownNavigator.sendData()} in base64 chunks
+     *
+     * @param streamId   id of the stream in following calls
+     * @param channel    channel name
+     * @param byteLength number of bytes, for JSON the number of characters
+     * @param json       true if data is UTF-8 JSON text
+     */
+    default void dataBegin(int streamId, String channel, int byteLength, boolean json) {
+
+    }
+
+    default void dataChunk(int streamId, String base64) {
+
+    }
+
+    default void dataEnd(int streamId) {
+
+    }
+
+    /**
+     * Data sent by {@code markdownNavigator.sendData()} which is below the script's binary threshold
+     *
+     * @param channel channel name
+     * @param json    JSON text
+     */
+    default void dataJson(String channel, String json) {
+
+    }
+
+    /**
+     * Called by helper script on connection with calls made before the JSBridge was connected,
+     * so they cross the bridge once instead of once per call
+     *
+     * @param backlog JS array of arrays, method name followed by its arguments
+     */
+    void replayBacklog(JSObject backlog);
 }
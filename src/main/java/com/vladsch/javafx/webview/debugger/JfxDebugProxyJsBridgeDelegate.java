@@ -47,4 +47,16 @@ public class JfxDebugProxyJsBridgeDelegate implements JfxDebugProxyJsBridge {
     @Override public Object getState(final String name) {return myBridge.getState(name);}
 
     @Override public void setState(final String name, final Object state) {myBridge.setState(name, state);}
+
+    @Override public void setStateJson(final String name, final String json) {myBridge.setStateJson(name, json);}
+
+    @Override public void replayBacklog(final JSObject backlog) {myBridge.replayBacklog(backlog);}
+
+    @Override public void dataBegin(final int streamId, final String channel, final int byteLength, final boolean json) {myBridge.dataBegin(streamId, channel, byteLength, json);}
+
+    @Override public void dataChunk(final int streamId, final String base64) {myBridge.dataChunk(streamId, base64);}
+
+    @Override public void dataEnd(final int streamId) {myBridge.dataEnd(streamId);}
+
+    @Override public void dataJson(final String channel, final String json) {myBridge.dataJson(channel, json);}
 }
@@ -28,6 +28,14 @@ package com.vladsch.javafx.webview.debugger;
 public interface JfxDebuggerAccess {
     String setArg(Object arg);
     void clearArg();
+
+    /**
+     * Page global object was cleared, release all values staged with {@link #setArg(Object)}
+     */
+    default void clearAllArgs() {
+        clearArg();
+    }
+
     Object eval(String script);
     void pageReloadStarted();
     String jsBridgeHelperScript();
@@ -0,0 +1,495 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per CDP method counters and latency histograms for a {@link DevToolsDebugProxy}
+ * <p>
+ * Commands are messages from dev tools, events are messages from the WebView debugger.
+ * Round trip times are measured from the command sent to WebView debugger to its result.
+ * Message sizes are in characters.
+ * <p>
+ * Install with {@link DevToolsDebugProxy#setMetrics(JfxDebuggerMetrics)}, expose with {@link #registerMBean(String)}
+ */
+public class JfxDebuggerMetrics implements JfxDebuggerMetricsMBean {
+    public static final String JMX_DOMAIN = "com.vladsch.javafx.webview.debugger";
+    public static final String RESULT_METHOD = "(result)";
+    private static final int MAX_PENDING_COMMANDS = 1024;
+
+    final static LogHandler LOG = LogHandler.getInstance();
+
+    public static class MethodStats {
+        final AtomicLong myCount = new AtomicLong();
+        final AtomicLong myChars = new AtomicLong();
+        final JfxLatencyHistogram myLatency = new JfxLatencyHistogram();
+
+        public long getCount() {
+            return myCount.get();
+        }
+
+        public long getChars() {
+            return myChars.get();
+        }
+
+        /**
+         * @return round trip for commands, handling time for events
+         */
+        public JfxLatencyHistogram getLatency() {
+            return myLatency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count: %d, chars: %d, latency: { %s }", getCount(), getChars(), myLatency);
+        }
+    }
+
+    private static class PendingCommand {
+        final String method;
+        final long sentNanos;
+
+        PendingCommand(String method, long sentNanos) {
+            this.method = method;
+            this.sentNanos = sentNanos;
+        }
+    }
+
+    private final ConcurrentHashMap<String, MethodStats> myCommandStats = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, MethodStats> myEventStats = new ConcurrentHashMap<>();
+    private final HashMap<Integer, PendingCommand> myPendingCommands = new HashMap<>();
+    private final AtomicLong myCommandCount = new AtomicLong();
+    private final AtomicLong myCommandChars = new AtomicLong();
+    private final AtomicLong myEventCount = new AtomicLong();
+    private final AtomicLong myEventChars = new AtomicLong();
+    private final JfxLatencyHistogram mySendMessage = new JfxLatencyHistogram();
+    private final JfxLatencyHistogram myCall = new JfxLatencyHistogram();
+    private final JfxLatencyHistogram myFxHop = new JfxLatencyHistogram();
+    private final JfxLatencyHistogram myConsolePause = new JfxLatencyHistogram();
+    private volatile int myQueuedLogRequests;
+    private volatile int myMaxQueuedLogRequests;
+    private volatile int myPendingAsyncResults;
+    private volatile int myMaxPendingAsyncResults;
+    private @Nullable ObjectName myObjectName;
+
+    /**
+     * Dev tools command handled by proxy
+     *
+     * @param message    raw message
+     * @param startNanos start of handling
+     * @param endNanos   end of handling
+     */
+    public void commandHandled(@NotNull String message, long startNanos, long endNanos) {
+        String method = messageMethod(message);
+        MethodStats stats = methodStats(myCommandStats, method == null ? RESULT_METHOD : method);
+        stats.myCount.incrementAndGet();
+        stats.myChars.addAndGet(message.length());
+        myCommandCount.incrementAndGet();
+        myCommandChars.addAndGet(message.length());
+        mySendMessage.record(endNanos - startNanos);
+    }
+
+    /**
+     * WebView debugger event or result handled by proxy
+     *
+     * @param message    raw message
+     * @param startNanos start of handling
+     * @param endNanos   end of handling
+     */
+    public void eventHandled(@NotNull String message, long startNanos, long endNanos) {
+        String method = messageMethod(message);
+        if (method == null) {
+            int id = messageId(message, true);
+            if (id > 0) {
+                PendingCommand pending;
+                synchronized (myPendingCommands) {
+                    pending = myPendingCommands.remove(id);
+                }
+
+                if (pending != null) {
+                    methodStats(myCommandStats, pending.method).myLatency.record(startNanos - pending.sentNanos);
+                }
+            }
+            method = RESULT_METHOD;
+        }
+
+        MethodStats stats = methodStats(myEventStats, method);
+        stats.myCount.incrementAndGet();
+        stats.myChars.addAndGet(message.length());
+        stats.myLatency.record(endNanos - startNanos);
+        myEventCount.incrementAndGet();
+        myEventChars.addAndGet(message.length());
+        myCall.record(endNanos - startNanos);
+    }
+
+    /**
+     * Command sent to WebView debugger, starts round trip timing
+     *
+     * @param message raw message
+     * @param nanos   time sent
+     */
+    public void commandSent(@NotNull String message, long nanos) {
+        int id = messageId(message, false);
+        if (id > 0) {
+            String method = messageMethod(message);
+            synchronized (myPendingCommands) {
+                if (myPendingCommands.size() >= MAX_PENDING_COMMANDS) {
+                    // results which never arrived, no point keeping them
+                    myPendingCommands.clear();
+                }
+                myPendingCommands.put(id, new PendingCommand(method == null ? RESULT_METHOD : method, nanos));
+            }
+        }
+    }
+
+    public void fxHop(long nanos) {
+        myFxHop.record(nanos);
+    }
+
+    public void consolePause(long nanos) {
+        myConsolePause.record(nanos);
+    }
+
+    public void queueDepths(int queuedLogRequests, int pendingAsyncResults) {
+        myQueuedLogRequests = queuedLogRequests;
+        myPendingAsyncResults = pendingAsyncResults;
+        if (myMaxQueuedLogRequests < queuedLogRequests) myMaxQueuedLogRequests = queuedLogRequests;
+        if (myMaxPendingAsyncResults < pendingAsyncResults) myMaxPendingAsyncResults = pendingAsyncResults;
+    }
+
+    private static MethodStats methodStats(ConcurrentHashMap<String, MethodStats> statsMap, String method) {
+        MethodStats stats = statsMap.get(method);
+        if (stats == null) {
+            stats = statsMap.computeIfAbsent(method, m -> new MethodStats());
+        }
+        return stats;
+    }
+
+    /**
+     * Extract top level method from raw message without parsing the json,
+     * requests and events have method before their params, results have none
+     *
+     * @param message raw message
+     *
+     * @return method or null if none
+     */
+    static @Nullable String messageMethod(@NotNull String message) {
+        int iMax = message.length();
+        int depth = 0;
+        for (int i = 0; i < iMax; i++) {
+            char c = message.charAt(i);
+            if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            } else if (c == '"') {
+                int start = i + 1;
+                for (i = start; i < iMax && (c = message.charAt(i)) != '"'; i++) {
+                    if (c == '\\') i++;
+                }
+
+                if (depth == 1) {
+                    int colon = i + 1;
+                    while (colon < iMax && message.charAt(colon) == ' ') colon++;
+                    if (colon >= iMax || message.charAt(colon) != ':') continue; // a value
+
+                    int length = i - start;
+                    if (length == 6 && message.regionMatches(start, "method", 0, 6)) {
+                        int valueStart = message.indexOf('"', colon + 1);
+                        if (valueStart < 0) return null;
+                        int valueEnd = message.indexOf('"', valueStart + 1);
+                        return valueEnd < 0 ? null : message.substring(valueStart + 1, valueEnd);
+                    }
+
+                    if (length == 6 && (message.regionMatches(start, "params", 0, 6) || message.regionMatches(start, "result", 0, 6))
+                            || length == 5 && message.regionMatches(start, "error", 0, 5)) {
+                        // no need to scan the payload
+                        return null;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Extract top level id from raw message without parsing the json,
+     * requests have id as the first member and results from debugger have it as the last member
+     *
+     * @param message raw message
+     * @param isLast  true if id is the last member
+     *
+     * @return id or 0 if none
+     */
+    static int messageId(@NotNull String message, boolean isLast) {
+        int pos = isLast ? message.lastIndexOf("\"id\"") : message.indexOf("\"id\"");
+        if (pos < 0) return 0;
+        int i = message.indexOf(':', pos + 4);
+        if (i < 0) return 0;
+
+        int iMax = message.length();
+        i++;
+        while (i < iMax && message.charAt(i) == ' ') i++;
+
+        int id = 0;
+        while (i < iMax) {
+            char c = message.charAt(i++);
+            if (c < '0' || c > '9') break;
+            id = id * 10 + (c - '0');
+        }
+        return id;
+    }
+
+    public @NotNull Map<String, MethodStats> getCommandStats() {
+        return new TreeMap<>(myCommandStats);
+    }
+
+    public @NotNull Map<String, MethodStats> getEventStats() {
+        return new TreeMap<>(myEventStats);
+    }
+
+    public @NotNull JfxLatencyHistogram getSendMessageLatency() {
+        return mySendMessage;
+    }
+
+    public @NotNull JfxLatencyHistogram getCallLatency() {
+        return myCall;
+    }
+
+    public @NotNull JfxLatencyHistogram getFxHopLatency() {
+        return myFxHop;
+    }
+
+    public @NotNull JfxLatencyHistogram getConsolePauseLatency() {
+        return myConsolePause;
+    }
+
+    @Override
+    public long getCommandCount() {
+        return myCommandCount.get();
+    }
+
+    @Override
+    public long getCommandChars() {
+        return myCommandChars.get();
+    }
+
+    @Override
+    public long getEventCount() {
+        return myEventCount.get();
+    }
+
+    @Override
+    public long getEventChars() {
+        return myEventChars.get();
+    }
+
+    @Override
+    public long getSendMessageP50Micros() {
+        return mySendMessage.getPercentileNanos(50) / 1000;
+    }
+
+    @Override
+    public long getSendMessageP99Micros() {
+        return mySendMessage.getPercentileNanos(99) / 1000;
+    }
+
+    @Override
+    public long getSendMessageMaxMicros() {
+        return mySendMessage.getMaxNanos() / 1000;
+    }
+
+    @Override
+    public long getCallP50Micros() {
+        return myCall.getPercentileNanos(50) / 1000;
+    }
+
+    @Override
+    public long getCallP99Micros() {
+        return myCall.getPercentileNanos(99) / 1000;
+    }
+
+    @Override
+    public long getCallMaxMicros() {
+        return myCall.getMaxNanos() / 1000;
+    }
+
+    @Override
+    public long getFxHopP50Micros() {
+        return myFxHop.getPercentileNanos(50) / 1000;
+    }
+
+    @Override
+    public long getFxHopP99Micros() {
+        return myFxHop.getPercentileNanos(99) / 1000;
+    }
+
+    @Override
+    public long getFxHopMaxMicros() {
+        return myFxHop.getMaxNanos() / 1000;
+    }
+
+    @Override
+    public long getConsolePauseCount() {
+        return myConsolePause.getCount();
+    }
+
+    @Override
+    public long getConsolePauseP99Micros() {
+        return myConsolePause.getPercentileNanos(99) / 1000;
+    }
+
+    @Override
+    public long getConsolePauseMaxMicros() {
+        return myConsolePause.getMaxNanos() / 1000;
+    }
+
+    @Override
+    public int getQueuedLogRequests() {
+        return myQueuedLogRequests;
+    }
+
+    @Override
+    public int getMaxQueuedLogRequests() {
+        return myMaxQueuedLogRequests;
+    }
+
+    @Override
+    public int getPendingAsyncResults() {
+        return myPendingAsyncResults;
+    }
+
+    @Override
+    public int getMaxPendingAsyncResults() {
+        return myMaxPendingAsyncResults;
+    }
+
+    @Override
+    public String[] getCommandMethodStats() {
+        return methodStatsStrings(myCommandStats);
+    }
+
+    @Override
+    public String[] getEventMethodStats() {
+        return methodStatsStrings(myEventStats);
+    }
+
+    private static String[] methodStatsStrings(Map<String, MethodStats> statsMap) {
+        ArrayList<String> list = new ArrayList<>();
+        for (Map.Entry<String, MethodStats> entry : new TreeMap<>(statsMap).entrySet()) {
+            list.add(entry.getKey() + " " + entry.getValue());
+        }
+        return list.toArray(new String[0]);
+    }
+
+    @Override
+    public void reset() {
+        myCommandStats.clear();
+        myEventStats.clear();
+        synchronized (myPendingCommands) {
+            myPendingCommands.clear();
+        }
+        myCommandCount.set(0);
+        myCommandChars.set(0);
+        myEventCount.set(0);
+        myEventChars.set(0);
+        mySendMessage.reset();
+        myCall.reset();
+        myFxHop.reset();
+        myConsolePause.reset();
+        myMaxQueuedLogRequests = myQueuedLogRequests;
+        myMaxPendingAsyncResults = myPendingAsyncResults;
+    }
+
+    /**
+     * Register with the platform MBean server
+     *
+     * @param instance instance name used in object name
+     *
+     * @return true if registered
+     */
+    public synchronized boolean registerMBean(@NotNull String instance) {
+        if (myObjectName != null) return true;
+
+        try {
+            ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=DebuggerMetrics,instance=" + ObjectName.quote(instance));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(this, objectName);
+                myObjectName = objectName;
+                return true;
+            }
+        } catch (JMException e) {
+            LOG.error("Failed to register debugger metrics MBean", e);
+        }
+        return false;
+    }
+
+    public synchronized void unregisterMBean() {
+        ObjectName objectName = myObjectName;
+        if (objectName != null) {
+            myObjectName = null;
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                LOG.error("Failed to unregister debugger metrics MBean", e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("sendMessage: { ").append(mySendMessage).append(" }\n");
+        sb.append("call: { ").append(myCall).append(" }\n");
+        sb.append("fxHop: { ").append(myFxHop).append(" }\n");
+        sb.append("consolePause: { ").append(myConsolePause).append(" }\n");
+        sb.append("queuedLogRequests: ").append(myQueuedLogRequests).append(" max: ").append(myMaxQueuedLogRequests).append("\n");
+        sb.append("pendingAsyncResults: ").append(myPendingAsyncResults).append(" max: ").append(myMaxPendingAsyncResults).append("\n");
+        sb.append("commands:\n");
+        for (String stats : getCommandMethodStats()) {
+            sb.append("  ").append(stats).append("\n");
+        }
+        sb.append("events:\n");
+        for (String stats : getEventMethodStats()) {
+            sb.append("  ").append(stats).append("\n");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+/**
+ * JMX view of {@link JfxDebuggerMetrics}, times are in microseconds
+ */
+public interface JfxDebuggerMetricsMBean {
+    long getCommandCount();
+
+    long getCommandChars();
+
+    long getEventCount();
+
+    long getEventChars();
+
+    long getSendMessageP50Micros();
+
+    long getSendMessageP99Micros();
+
+    long getSendMessageMaxMicros();
+
+    long getCallP50Micros();
+
+    long getCallP99Micros();
+
+    long getCallMaxMicros();
+
+    long getFxHopP50Micros();
+
+    long getFxHopP99Micros();
+
+    long getFxHopMaxMicros();
+
+    long getConsolePauseCount();
+
+    long getConsolePauseP99Micros();
+
+    long getConsolePauseMaxMicros();
+
+    int getQueuedLogRequests();
+
+    int getMaxQueuedLogRequests();
+
+    int getPendingAsyncResults();
+
+    int getMaxPendingAsyncResults();
+
+    String[] getCommandMethodStats();
+
+    String[] getEventMethodStats();
+
+    void reset();
+}
@@ -0,0 +1,242 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import com.sun.javafx.application.PlatformImpl;
+import javafx.application.Platform;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.SwingUtilities;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread hops used by the debug proxy and server
+ * <p>
+ * Default uses the JavaFX application thread. Set {@link #DISPATCHER} or use {@link DevToolsDebugProxy#setDispatcher(JfxDispatcher)}
+ * to run without a JavaFX toolkit.
+ */
+public abstract class JfxDispatcher {
+    public static JfxDispatcher getInstance() {
+        return DISPATCHER;
+    }
+
+    /**
+     * Run on dispatch thread, later
+     *
+     * @param runnable code to run
+     */
+    public abstract void runLater(@NotNull Runnable runnable);
+
+    /**
+     * Run on dispatch thread after a delay
+     *
+     * @param runnable    code to run
+     * @param delayMillis milliseconds to wait before queueing runnable
+     */
+    public void runLater(@NotNull Runnable runnable, long delayMillis) {
+        getTimer().schedule(() -> runLater(runnable), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run on dispatch thread and wait for completion
+     *
+     * @param runnable code to run
+     */
+    public abstract void runAndWait(@NotNull Runnable runnable);
+
+    public abstract boolean isDispatchThread();
+
+    /**
+     * Run on dispatch thread after the debugger had a chance to process its pending events
+     *
+     * @param runnable code to run
+     */
+    public void yieldLater(@NotNull Runnable runnable) {
+        runLater(runnable);
+    }
+
+    final public static JfxDispatcher FX = new JfxDispatcher() {
+        @Override
+        public void runLater(@NotNull final Runnable runnable) {
+            Platform.runLater(runnable);
+        }
+
+        @Override
+        public void runAndWait(@NotNull final Runnable runnable) {
+            PlatformImpl.runAndWait(runnable);
+        }
+
+        @Override
+        public boolean isDispatchThread() {
+            return Platform.isFxApplicationThread();
+        }
+
+        @Override
+        public void yieldLater(@NotNull final Runnable runnable) {
+            //ApplicationManager.getApplication().invokeLater(() -> {
+            SwingUtilities.invokeLater(() -> {
+                Platform.runLater(() -> {
+                    //noinspection Convert2MethodRef,FunctionalExpressionCanBeFolded
+                    runnable.run();
+                });
+            });
+        }
+    };
+
+    // NOTE: declared after FX so it is initialized, set JfxDispatcher.DISPATCHER by application before creating debugger instances
+    public static JfxDispatcher DISPATCHER = FX;
+
+    private static ScheduledExecutorService ourTimer;
+
+    private static synchronized ScheduledExecutorService getTimer() {
+        if (ourTimer == null) {
+            ourTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "JfxDispatcher-Timer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return ourTimer;
+    }
+
+    /**
+     * Dispatcher for a single thread driving the debugger, runnables queue up until {@link #runPending()}
+     * is called by the driving thread.
+     */
+    public static class Queued extends JfxDispatcher {
+        private final ArrayDeque<Runnable> myQueue = new ArrayDeque<>();
+
+        @Override
+        public void runLater(@NotNull final Runnable runnable) {
+            synchronized (myQueue) {
+                myQueue.add(runnable);
+            }
+        }
+
+        @Override
+        public void runAndWait(@NotNull final Runnable runnable) {
+            runnable.run();
+        }
+
+        @Override
+        public boolean isDispatchThread() {
+            return true;
+        }
+
+        /**
+         * Run queued runnables, including ones queued while running
+         *
+         * @return number of runnables run
+         */
+        public int runPending() {
+            int count = 0;
+            while (true) {
+                Runnable runnable;
+                synchronized (myQueue) {
+                    runnable = myQueue.poll();
+                }
+                if (runnable == null) break;
+                runnable.run();
+                count++;
+            }
+            return count;
+        }
+
+        public boolean hasPending() {
+            synchronized (myQueue) {
+                return !myQueue.isEmpty();
+            }
+        }
+    }
+
+    /**
+     * Dispatcher with its own thread standing in for the JavaFX application thread, shared by all
+     * proxies using it the same way WebView instances share the application thread.
+     */
+    public static class SingleThread extends JfxDispatcher {
+        final static LogHandler LOG = LogHandler.getInstance();
+
+        private final ThreadPoolExecutor myExecutor;
+        private volatile Thread myThread;
+
+        public SingleThread(@NotNull String threadName) {
+            myExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                myThread = thread;
+                return thread;
+            });
+        }
+
+        @Override
+        public void runLater(@NotNull final Runnable runnable) {
+            myExecutor.execute(() -> {
+                try {
+                    runnable.run();
+                } catch (Throwable t) {
+                    LOG.error("Exception in dispatched runnable", t);
+                }
+            });
+        }
+
+        @Override
+        public void runAndWait(@NotNull final Runnable runnable) {
+            if (isDispatchThread()) {
+                runnable.run();
+            } else {
+                try {
+                    myExecutor.submit(runnable).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    LOG.error("Exception in dispatched runnable", e.getCause());
+                }
+            }
+        }
+
+        @Override
+        public boolean isDispatchThread() {
+            return Thread.currentThread() == myThread;
+        }
+
+        /**
+         * @return runnables waiting to run
+         */
+        public int getQueueDepth() {
+            return myExecutor.getQueue().size();
+        }
+
+        public void shutdown() {
+            myExecutor.shutdown();
+        }
+    }
+}
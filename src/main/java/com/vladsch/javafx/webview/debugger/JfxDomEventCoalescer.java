@@ -0,0 +1,357 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import com.vladsch.boxed.json.BoxedJsArray;
+import com.vladsch.boxed.json.BoxedJsNumber;
+import com.vladsch.boxed.json.BoxedJsObject;
+import com.vladsch.boxed.json.BoxedJsString;
+import com.vladsch.boxed.json.BoxedJson;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.json.JsonValue;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Buffers DOM mutation events from the WebView debugger for a short window before they are sent to dev tools
+ * <p>
+ * Within a window: insert and remove of the same node cancel out, including everything done to the node and
+ * its inserted descendants in between, repeated attribute, character data and child count changes of a node
+ * keep only the last one. A parent with more than the burst threshold of inserts and removes has these replaced
+ * by a {@code DOM.childNodeCountUpdated} and a {@code DOM.setChildNodes} of its children from the proxy's DOM
+ * mirror, which is up to date by the time the window is flushed. Only the direct children are sent, without the
+ * proxy's mirror fields, their own children are left as {@code childNodeCount} and the ids of those whose children
+ * are mirrored are collected so the proxy can answer dev tools' {@code DOM.requestChildNodes} for them, WebView
+ * does not push children it has already sent.
+ * <p>
+ * Used by {@link DevToolsDebugProxy#setDomEventCoalescing(int, int)}, not thread safe, used on the proxy dispatch thread.
+ */
+class JfxDomEventCoalescer {
+    static final int CHILD_NODE_INSERTED = 1;
+    static final int CHILD_NODE_REMOVED = 2;
+    static final int ATTRIBUTE = 3;
+    static final int CHARACTER_DATA = 4;
+    static final int CHILD_NODE_COUNT = 5;
+
+    private static class Event {
+        final int type;
+        final int nodeId;
+        final int parentId;
+        final int previousNodeId;
+        final String message;
+
+        Event(int type, int nodeId, int parentId, int previousNodeId, String message) {
+            this.type = type;
+            this.nodeId = nodeId;
+            this.parentId = parentId;
+            this.previousNodeId = previousNodeId;
+            this.message = message;
+        }
+    }
+
+    private final int myBurstThreshold;
+    private final ArrayList<Event> myEvents = new ArrayList<>(); // null for dropped events
+    private final HashMap<Integer, Integer> myInsertedIndex = new HashMap<>(); // node id to index of its insert event
+    private final HashMap<String, Integer> myLastValueIndex = new HashMap<>(); // node id and attribute name to index of last change
+    private final HashMap<Integer, Integer> myParentMutations = new HashMap<>(); // parent id to inserts and removes
+    private long myReceived;
+    private long mySent;
+
+    JfxDomEventCoalescer(int burstThreshold) {
+        myBurstThreshold = burstThreshold;
+    }
+
+    /**
+     * @param method event method
+     * @return type of coalesced event or 0 if event is not coalesced
+     */
+    static int eventType(@NotNull String method) {
+        switch (method) {
+            case "DOM.childNodeInserted":
+                return CHILD_NODE_INSERTED;
+            case "DOM.childNodeRemoved":
+                return CHILD_NODE_REMOVED;
+            case "DOM.attributeModified":
+            case "DOM.attributeRemoved":
+                return ATTRIBUTE;
+            case "DOM.characterDataModified":
+                return CHARACTER_DATA;
+            case "DOM.childNodeCountUpdated":
+                return CHILD_NODE_COUNT;
+            default:
+                return 0;
+        }
+    }
+
+    boolean isEmpty() {
+        return myEvents.isEmpty();
+    }
+
+    /**
+     * @return events added
+     */
+    long getReceived() {
+        return myReceived;
+    }
+
+    /**
+     * @return messages sent to dev tools
+     */
+    long getSent() {
+        return mySent;
+    }
+
+    void clear() {
+        myEvents.clear();
+        myInsertedIndex.clear();
+        myLastValueIndex.clear();
+        myParentMutations.clear();
+    }
+
+    /**
+     * Add event to current window
+     *
+     * @param type    type from {@link #eventType(String)}
+     * @param json    parsed event
+     * @param message event message
+     */
+    void add(int type, @NotNull BoxedJsObject json, @NotNull String message) {
+        myReceived++;
+        switch (type) {
+            case CHILD_NODE_INSERTED: {
+                int parentId = json.evalJsNumber("params.parentNodeId").intValue();
+                int nodeId = json.evalJsNumber("params.node.nodeId").intValue();
+                int previousNodeId = json.evalJsNumber("params.previousNodeId").intValue();
+                myInsertedIndex.put(nodeId, myEvents.size());
+                myParentMutations.merge(parentId, 1, Integer::sum);
+                myEvents.add(new Event(type, nodeId, parentId, previousNodeId, message));
+                break;
+            }
+
+            case CHILD_NODE_REMOVED: {
+                int parentId = json.evalJsNumber("params.parentNodeId").intValue();
+                int nodeId = json.evalJsNumber("params.nodeId").intValue();
+                Integer insertedIndex = myInsertedIndex.remove(nodeId);
+                if (insertedIndex == null || !cancelInsert(insertedIndex)) {
+                    myParentMutations.merge(parentId, 1, Integer::sum);
+                    myEvents.add(new Event(type, nodeId, parentId, 0, message));
+                }
+                break;
+            }
+
+            case ATTRIBUTE:
+                addLastValue(type, json.evalJsNumber("params.nodeId").intValue(), json.evalJsString("params.name"), message);
+                break;
+
+            case CHARACTER_DATA:
+            case CHILD_NODE_COUNT:
+                addLastValue(type, json.evalJsNumber("params.nodeId").intValue(), null, message);
+                break;
+        }
+    }
+
+    private void addLastValue(int type, int nodeId, @Nullable BoxedJsString jsName, @NotNull String message) {
+        // attribute names cannot contain '#'
+        String key = nodeId + (jsName == null ? "#" + type : ":" + jsName.getString());
+        Integer index = myLastValueIndex.put(key, myEvents.size());
+        if (index != null) {
+            myEvents.set(index, null);
+        }
+        myEvents.add(new Event(type, nodeId, 0, 0, message));
+    }
+
+    /**
+     * Drop an insert event, events for the inserted node and nodes inserted under it
+     *
+     * @param insertedIndex index of insert event
+     * @return false if the node was used as previous sibling of a surviving insert and cannot be dropped
+     */
+    private boolean cancelInsert(int insertedIndex) {
+        Event inserted = myEvents.get(insertedIndex);
+        HashSet<Integer> dropped = new HashSet<>();
+        dropped.add(inserted.nodeId);
+
+        int iMax = myEvents.size();
+        ArrayList<Integer> droppedIndices = new ArrayList<>();
+        droppedIndices.add(insertedIndex);
+
+        for (int i = insertedIndex + 1; i < iMax; i++) {
+            Event event = myEvents.get(i);
+            if (event == null) continue;
+
+            if (dropped.contains(event.nodeId) || dropped.contains(event.parentId)) {
+                if (event.type == CHILD_NODE_INSERTED) dropped.add(event.nodeId);
+                droppedIndices.add(i);
+            }
+        }
+
+        for (int i = insertedIndex + 1; i < iMax; i++) {
+            Event event = myEvents.get(i);
+            if (event != null && event.type == CHILD_NODE_INSERTED && dropped.contains(event.previousNodeId) && !dropped.contains(event.nodeId)) {
+                return false;
+            }
+        }
+
+        for (int index : droppedIndices) {
+            Event event = myEvents.get(index);
+            if (event.type == CHILD_NODE_INSERTED || event.type == CHILD_NODE_REMOVED) {
+                myParentMutations.merge(event.parentId, -1, Integer::sum);
+            }
+            if (event.type == CHILD_NODE_INSERTED) {
+                myInsertedIndex.remove(event.nodeId);
+            }
+            myEvents.set(index, null);
+        }
+        return true;
+    }
+
+    /**
+     * Send buffered events
+     *
+     * @param mirrorNode DOM mirror node for id, or null if not mirrored
+     * @param collapsed  ids of nodes sent without their mirrored children
+     * @param out        consumer of messages to send
+     */
+    void flush(@NotNull IntFunction<BoxedJsObject> mirrorNode, @NotNull Set<Integer> collapsed, @NotNull Consumer<String> out) {
+        LinkedHashSet<Integer> refreshed = new LinkedHashSet<>();
+        for (Map.Entry<Integer, Integer> entry : myParentMutations.entrySet()) {
+            if (entry.getValue() > myBurstThreshold) {
+                BoxedJsObject jsParent = mirrorNode.apply(entry.getKey());
+                if (jsParent != null && jsParent.isValid() && jsParent.getJsonArray("children").isValid()) {
+                    refreshed.add(entry.getKey());
+                }
+            }
+        }
+
+        // nested burst parents are refreshed with their ancestor
+        if (refreshed.size() > 1) {
+            refreshed.removeIf(parentId -> isUnder(getParentId(mirrorNode, parentId), refreshed, mirrorNode));
+        }
+
+        for (Event event : myEvents) {
+            if (event == null) continue;
+
+            if (!refreshed.isEmpty() && (event.type == CHILD_NODE_INSERTED || event.type == CHILD_NODE_REMOVED)
+                    && isUnder(event.parentId, refreshed, mirrorNode)) {
+                continue;
+            }
+
+            mySent++;
+            out.accept(event.message);
+        }
+
+        for (int parentId : refreshed) {
+            BoxedJsArray jsChildren = mirrorNode.apply(parentId).getJsonArray("children");
+            mySent += 2;
+            out.accept(String.format("{\"method\":\"DOM.childNodeCountUpdated\",\"params\":{\"nodeId\":%d,\"childNodeCount\":%d}}", parentId, jsChildren.size()));
+            out.accept(String.format("{\"method\":\"DOM.setChildNodes\",\"params\":{\"parentId\":%d,\"nodes\":%s}}", parentId, nodesJson(jsChildren, 1, collapsed)));
+        }
+
+        clear();
+    }
+
+    /**
+     * Mirrored nodes as dev tools expects them, without the "parentId", "ordinal" and "childCount" fields
+     * added by the proxy
+     *
+     * @param jsNodes   mirrored nodes
+     * @param depth     levels of nodes to include, -1 for all
+     * @param collapsed ids of nodes whose mirrored children are left out are added, removed if included
+     * @return JSON array of nodes
+     */
+    @NotNull
+    static String nodesJson(@NotNull BoxedJsArray jsNodes, int depth, @NotNull Set<Integer> collapsed) {
+        StringBuilder sb = new StringBuilder();
+        sb.append('[');
+        int iMax = jsNodes.size();
+        for (int i = 0; i < iMax; i++) {
+            BoxedJsObject jsNode = jsNodes.getJsonObject(i);
+            if (i > 0) sb.append(',');
+            sb.append('{');
+            boolean first = true;
+            for (Map.Entry<String, JsonValue> entry : jsNode.entrySet()) {
+                switch (entry.getKey()) {
+                    case "parentId":
+                    case "ordinal":
+                    case "childCount":
+                    case "childNodeCount":
+                    case "children":
+                        continue;
+                }
+                if (!first) sb.append(',');
+                first = false;
+                sb.append(BoxedJson.boxedOf(entry.getKey()).toString()).append(':').append(entry.getValue().toString());
+            }
+
+            BoxedJsArray jsChildren = jsNode.getJsonArray("children");
+            BoxedJsNumber jsCount = jsNode.getJsonNumber("childNodeCount");
+            int childCount = jsChildren.isValid() ? jsChildren.size() : jsCount.isValid() ? jsCount.intValue() : -1;
+            if (childCount >= 0) {
+                if (!first) sb.append(',');
+                sb.append("\"childNodeCount\":").append(childCount);
+            }
+
+            if (jsChildren.isValid()) {
+                int nodeId = jsNode.getJsonNumber("nodeId").intValue();
+                if (depth == 1) {
+                    if (childCount > 0) collapsed.add(nodeId);
+                } else {
+                    collapsed.remove(nodeId);
+                    sb.append(",\"children\":").append(nodesJson(jsChildren, depth - 1, collapsed));
+                }
+            }
+            sb.append('}');
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+
+    private static int getParentId(@NotNull IntFunction<BoxedJsObject> mirrorNode, int nodeId) {
+        BoxedJsObject jsNode = mirrorNode.apply(nodeId);
+        if (jsNode != null && jsNode.isValid()) {
+            BoxedJsNumber jsParentId = jsNode.getJsonNumber("parentId");
+            if (jsParentId.isValid()) return jsParentId.intValue();
+        }
+        return 0;
+    }
+
+    // true if node or one of its mirrored ancestors is in parents
+    private static boolean isUnder(int nodeId, @NotNull HashSet<Integer> parents, @NotNull IntFunction<BoxedJsObject> mirrorNode) {
+        while (nodeId != 0) {
+            if (parents.contains(nodeId)) return true;
+            nodeId = getParentId(mirrorNode, nodeId);
+        }
+        return false;
+    }
+}
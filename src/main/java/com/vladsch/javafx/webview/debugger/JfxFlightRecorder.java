@@ -0,0 +1,339 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Flight recorder of recent proxy traffic and state transitions in a memory mapped ring file
+ * <p>
+ * The mapped file is written by the OS even if the JVM is taken down by a WebView crash, so the
+ * last traffic before the crash can be read with {@link #read(File)} or by running this class with
+ * the ring file as argument.
+ * <p>
+ * Writes are allocation free, messages are encoded directly into the mapped buffer and truncated
+ * to {@link #getMaxMessageChars()}.
+ * <p>
+ * File format: header of {@link #HEADER_SIZE} bytes: int magic, int version, int data size,
+ * int max message chars, long start epoch millis, long write offset, long next sequence number.
+ * Followed by data area of 8 byte aligned records: int record magic, int record size,
+ * long sequence, long nanos since start, byte kind, byte flags, short unused, int payload bytes,
+ * payload.
+ */
+public class JfxFlightRecorder implements JfxCdpTrafficListener {
+    public static final int MAGIC = 0x4A464C52; // JFLR
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 64;
+    public static final int DEFAULT_SIZE_MB = 4;
+    public static final int DEFAULT_MAX_MESSAGE_CHARS = 16 * 1024;
+
+    public static final int STATE_CHANGE = 4;
+    public static final int FLAG_TRUNCATED = 1;
+
+    private static final int RECORD_MAGIC = 0x52454331; // REC1
+    private static final int WRAP_MAGIC = 0x57524150; // WRAP
+    private static final int RECORD_HEADER_SIZE = 32;
+
+    private static final int OFFSET_DATA_SIZE = 8;
+    private static final int OFFSET_MAX_CHARS = 12;
+    private static final int OFFSET_START_MILLIS = 16;
+    private static final int OFFSET_WRITE_POS = 24;
+    private static final int OFFSET_NEXT_SEQ = 32;
+
+    private static final String[] KIND_NAMES = { "D->P", "P->W", "W->P", "P->D", "STATE" };
+
+    private final LogHandler LOG = LogHandler.getInstance();
+    private final RandomAccessFile myFile;
+    private final MappedByteBuffer myBuffer;
+    private final int myDataSize;
+    private final int myMaxMessageChars;
+    private final long myStartNanos;
+    private int myWritePos;
+    private long myNextSeq;
+    private boolean myClosed;
+
+    public static class Record {
+        public final long seq;
+        public final int kind;
+        public final long nanos;
+        public final boolean truncated;
+        public final @NotNull String message;
+
+        public Record(long seq, int kind, long nanos, boolean truncated, @NotNull String message) {
+            this.seq = seq;
+            this.kind = kind;
+            this.nanos = nanos;
+            this.truncated = truncated;
+            this.message = message;
+        }
+
+        public @NotNull String getKindName() {
+            return kind >= 0 && kind < KIND_NAMES.length ? KIND_NAMES[kind] : String.valueOf(kind);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d %d.%06d %s %s%s", seq, nanos / 1000000, nanos % 1000000, getKindName(), message, truncated ? "..." : "");
+        }
+    }
+
+    public JfxFlightRecorder(@NotNull File file) throws IOException {
+        this(file, DEFAULT_SIZE_MB, DEFAULT_MAX_MESSAGE_CHARS);
+    }
+
+    /**
+     * @param file            ring file, overwritten
+     * @param sizeMB          size of ring in MB
+     * @param maxMessageChars messages longer than this are truncated
+     *
+     * @throws IOException if file could not be mapped
+     */
+    public JfxFlightRecorder(@NotNull File file, int sizeMB, int maxMessageChars) throws IOException {
+        myDataSize = Math.max(1, sizeMB) * 1024 * 1024;
+        myMaxMessageChars = Math.min(Math.max(256, maxMessageChars), (myDataSize - RECORD_HEADER_SIZE - 8) / 3 / 2);
+        myStartNanos = System.nanoTime();
+
+        myFile = new RandomAccessFile(file, "rw");
+        myFile.setLength(0);
+        myFile.setLength(HEADER_SIZE + myDataSize);
+        myBuffer = myFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + myDataSize);
+
+        myBuffer.putInt(OFFSET_DATA_SIZE, myDataSize);
+        myBuffer.putInt(OFFSET_MAX_CHARS, myMaxMessageChars);
+        myBuffer.putLong(OFFSET_START_MILLIS, System.currentTimeMillis());
+        myBuffer.putLong(OFFSET_WRITE_POS, 0);
+        myBuffer.putLong(OFFSET_NEXT_SEQ, 0);
+        myBuffer.putInt(4, VERSION);
+        myBuffer.putInt(0, MAGIC);
+    }
+
+    public int getMaxMessageChars() {
+        return myMaxMessageChars;
+    }
+
+    @Override
+    public void onMessage(int direction, long nanos, String message) {
+        write(direction, nanos, message);
+    }
+
+    @Override
+    public void onStateChange(long nanos, String state) {
+        write(STATE_CHANGE, nanos, state);
+    }
+
+    private synchronized void write(int kind, long nanos, String message) {
+        if (myClosed) return;
+
+        final int chars = Math.min(message.length(), myMaxMessageChars);
+        final int maxBytes = chars * 3;
+        int pos = myWritePos;
+
+        if (pos + RECORD_HEADER_SIZE + maxBytes > myDataSize) {
+            // not enough room till the end, mark wrap and continue at start
+            if (pos + 4 <= myDataSize) {
+                myBuffer.putInt(HEADER_SIZE + pos, WRAP_MAGIC);
+            }
+            pos = 0;
+        }
+
+        final int base = HEADER_SIZE + pos;
+        final MappedByteBuffer buffer = myBuffer;
+        int out = base + RECORD_HEADER_SIZE;
+
+        // write payload first so the record magic only goes in after it is complete
+        for (int i = 0; i < chars; i++) {
+            final char c = message.charAt(i);
+            if (c < 0x80) {
+                buffer.put(out++, (byte) c);
+            } else if (c < 0x800) {
+                buffer.put(out++, (byte) (0xC0 | (c >> 6)));
+                buffer.put(out++, (byte) (0x80 | (c & 0x3F)));
+            } else {
+                // surrogates are encoded separately, read() decodes them the same way
+                buffer.put(out++, (byte) (0xE0 | (c >> 12)));
+                buffer.put(out++, (byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put(out++, (byte) (0x80 | (c & 0x3F)));
+            }
+        }
+
+        final int payloadBytes = out - base - RECORD_HEADER_SIZE;
+        final int recordSize = (RECORD_HEADER_SIZE + payloadBytes + 7) & ~7;
+        final long seq = myNextSeq++;
+
+        buffer.putInt(base + 4, recordSize);
+        buffer.putLong(base + 8, seq);
+        buffer.putLong(base + 16, nanos - myStartNanos);
+        buffer.put(base + 24, (byte) kind);
+        buffer.put(base + 25, (byte) (chars < message.length() ? FLAG_TRUNCATED : 0));
+        buffer.putShort(base + 26, (short) 0);
+        buffer.putInt(base + 28, payloadBytes);
+        buffer.putInt(base, RECORD_MAGIC);
+
+        myWritePos = pos + recordSize;
+        buffer.putLong(OFFSET_WRITE_POS, myWritePos);
+        buffer.putLong(OFFSET_NEXT_SEQ, myNextSeq);
+    }
+
+    /**
+     * Force mapped changes to disk, not needed for crash recovery since the OS writes the
+     * mapped pages, only for power loss.
+     */
+    public synchronized void force() {
+        if (!myClosed) {
+            myBuffer.force();
+        }
+    }
+
+    public synchronized void close() {
+        if (!myClosed) {
+            myClosed = true;
+            myBuffer.force();
+            try {
+                myFile.close();
+            } catch (IOException e) {
+                LOG.error("Error closing flight recorder", e);
+            }
+        }
+    }
+
+    /**
+     * Read records from ring file in the order they were written
+     *
+     * @param file ring file
+     *
+     * @return records, oldest first
+     *
+     * @throws IOException if not a flight recorder file
+     */
+    public static @NotNull List<Record> read(@NotNull File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            if (raf.length() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a flight recorder file: " + file);
+            }
+
+            int dataSize = buffer.getInt(OFFSET_DATA_SIZE);
+            int maxChars = buffer.getInt(OFFSET_MAX_CHARS);
+            int writePos = (int) buffer.getLong(OFFSET_WRITE_POS);
+            long nextSeq = buffer.getLong(OFFSET_NEXT_SEQ);
+            if (HEADER_SIZE + (long) dataSize > raf.length() || writePos < 0 || writePos > dataSize) {
+                throw new IOException("Corrupted flight recorder header: " + file);
+            }
+
+            long minSeq = Math.max(0, nextSeq - dataSize / RECORD_HEADER_SIZE);
+            ArrayList<Record> records = new ArrayList<>();
+
+            // records of the previous lap after write position, first one may have been partially overwritten
+            int pos = writePos;
+            while (pos + RECORD_HEADER_SIZE <= dataSize) {
+                int size = readRecord(buffer, dataSize, maxChars, pos, minSeq, nextSeq, records);
+                if (size < 0) break;
+                pos += size == 0 ? 8 : size;
+            }
+
+            // current lap from start to write position
+            pos = 0;
+            while (pos < writePos) {
+                int size = readRecord(buffer, dataSize, maxChars, pos, minSeq, nextSeq, records);
+                if (size <= 0) break;
+                pos += size;
+            }
+
+            records.sort(Comparator.comparingLong(record -> record.seq));
+            return records;
+        }
+    }
+
+    /**
+     * @return size of record, 0 if not a valid record, -1 if wrap marker
+     */
+    private static int readRecord(MappedByteBuffer buffer, int dataSize, int maxChars, int pos, long minSeq, long nextSeq, List<Record> records) {
+        int base = HEADER_SIZE + pos;
+        int magic = buffer.getInt(base);
+        if (magic == WRAP_MAGIC) return -1;
+        if (magic != RECORD_MAGIC) return 0;
+
+        int size = buffer.getInt(base + 4);
+        long seq = buffer.getLong(base + 8);
+        int kind = buffer.get(base + 24);
+        int payloadBytes = buffer.getInt(base + 28);
+
+        if (size < RECORD_HEADER_SIZE || (size & 7) != 0 || pos + size > dataSize
+                || payloadBytes < 0 || payloadBytes > maxChars * 3 || RECORD_HEADER_SIZE + payloadBytes > size
+                || seq < minSeq || seq >= nextSeq || kind < 0 || kind > STATE_CHANGE) {
+            return 0;
+        }
+
+        long nanos = buffer.getLong(base + 16);
+        boolean truncated = (buffer.get(base + 25) & FLAG_TRUNCATED) != 0;
+        records.add(new Record(seq, kind, nanos, truncated, decode(buffer, base + RECORD_HEADER_SIZE, payloadBytes)));
+        return size;
+    }
+
+    private static String decode(MappedByteBuffer buffer, int start, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        int i = start;
+        int iMax = start + length;
+        while (i < iMax) {
+            int b = buffer.get(i++) & 0xFF;
+            if (b < 0x80) {
+                sb.append((char) b);
+            } else if ((b & 0xE0) == 0xC0 && i < iMax) {
+                sb.append((char) (((b & 0x1F) << 6) | (buffer.get(i++) & 0x3F)));
+            } else if ((b & 0xF0) == 0xE0 && i + 1 < iMax) {
+                int b1 = buffer.get(i++) & 0x3F;
+                int b2 = buffer.get(i++) & 0x3F;
+                sb.append((char) (((b & 0x0F) << 12) | (b1 << 6) | b2));
+            } else {
+                sb.append('\uFFFD');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param file ring file
+     *
+     * @return time recording was started in milliseconds since epoch
+     *
+     * @throws IOException if file could not be read
+     */
+    public static long readStartMillis(@NotNull File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(OFFSET_START_MILLIS);
+            return raf.readLong();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram with power of 2 nanosecond buckets
+ * <p>
+ * Recording is lock free and allocation free, reported percentiles are the upper bound of the bucket.
+ */
+public class JfxLatencyHistogram {
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray myBuckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong myCount = new AtomicLong();
+    private final AtomicLong myTotal = new AtomicLong();
+    private final AtomicLong myMax = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        myBuckets.incrementAndGet(nanos == 0 ? 0 : BUCKETS - Long.numberOfLeadingZeros(nanos));
+        myCount.incrementAndGet();
+        myTotal.addAndGet(nanos);
+
+        long max = myMax.get();
+        while (nanos > max && !myMax.compareAndSet(max, nanos)) {
+            max = myMax.get();
+        }
+    }
+
+    public long getCount() {
+        return myCount.get();
+    }
+
+    public long getTotalNanos() {
+        return myTotal.get();
+    }
+
+    public long getMaxNanos() {
+        return myMax.get();
+    }
+
+    public long getMeanNanos() {
+        long count = myCount.get();
+        return count == 0 ? 0 : myTotal.get() / count;
+    }
+
+    /**
+     * @param percentile 0..100
+     *
+     * @return upper bound of bucket containing the percentile
+     */
+    public long getPercentileNanos(double percentile) {
+        long count = myCount.get();
+        if (count == 0) return 0;
+
+        long target = (long) Math.ceil(percentile / 100.0 * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += myBuckets.get(i);
+            if (seen >= target) {
+                return i == 0 ? 0 : Math.min(myMax.get(), i >= 63 ? Long.MAX_VALUE : (1L << i) - 1);
+            }
+        }
+        return myMax.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            myBuckets.set(i, 0);
+        }
+        myCount.set(0);
+        myTotal.set(0);
+        myMax.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count: %d, mean: %d us, p50: %d us, p99: %d us, max: %d us",
+                getCount(), getMeanNanos() / 1000, getPercentileNanos(50) / 1000, getPercentileNanos(99) / 1000, getMaxNanos() / 1000);
+    }
+}
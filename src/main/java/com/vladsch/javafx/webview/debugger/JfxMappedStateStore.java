@@ -0,0 +1,451 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import com.vladsch.boxed.json.BoxedJsObject;
+import com.vladsch.boxed.json.BoxedJson;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.json.JsonValue;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Script state store in a memory-mapped append-only file, shared by many WebView instances
+ * each with its own namespace from {@link #getProvider(String)}
+ * <p>
+ * Only keys whose JSON changed are appended on {@code setState}, instead of writing the whole state.
+ * The index of the last record for each key is rebuilt from the file when opened. When records
+ * no longer in the index exceed the garbage ratio the file is compacted on a background thread.
+ * <p>
+ * File format: int magic, int version, then records of int key length, int value length (-1 for removed),
+ * UTF-8 key bytes of namespace, NUL, name then UTF-8 value JSON bytes. A key length of 0 ends the records.
+ * The key length is written last so a record torn by a crash ends the records.
+ * <p>
+ * Compaction copies live records under the store lock, writes them to a new file without it so
+ * {@code setState} and {@code getState} are not blocked by the disk write, then under the lock adds records
+ * appended meanwhile and replaces the file by rename. Rename fails on Windows while the old mapping is still
+ * referenced, in that case the store keeps using the old file.
+ */
+public class JfxMappedStateStore implements Closeable {
+    public static final int MAGIC = 0x4A535453; // JSTS
+    public static final int VERSION = 1;
+    public static final double DEFAULT_GARBAGE_RATIO = 0.5;
+    public static final int DEFAULT_MIN_COMPACT_SIZE = 256 * 1024;
+
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_HEADER_SIZE = 8;
+    static final int MIN_CAPACITY = 64 * 1024;
+    static final char NAMESPACE_SEPARATOR = '\0';
+
+    private static class Entry {
+        final int offset;       // of record
+        final int keyLength;
+        final int valueLength;
+
+        Entry(final int offset, final int keyLength, final int valueLength) {
+            this.offset = offset;
+            this.keyLength = keyLength;
+            this.valueLength = valueLength;
+        }
+
+        int size() {
+            return RECORD_HEADER_SIZE + keyLength + valueLength;
+        }
+    }
+
+    private final LogHandler LOG = LogHandler.getInstance();
+    private final @NotNull File myFile;
+    private final double myGarbageRatio;
+    private final int myMinCompactSize;
+    private final HashMap<String, HashMap<String, Entry>> myIndex = new HashMap<>(); // namespace to name to last record
+    private final HashMap<String, Namespace> myNamespaces = new HashMap<>();
+    private final Object myCompactionLock = new Object(); // one compaction at a time, taken before the store lock
+    private FileChannel myChannel;
+    private MappedByteBuffer myBuffer;
+    private int myPosition;     // end of records
+    private long myLiveBytes;   // size of records in index
+    private boolean myCompacting;
+    private boolean myClosed;
+    private int myCompactionCount;
+
+    public JfxMappedStateStore(@NotNull File file) throws IOException {
+        this(file, DEFAULT_GARBAGE_RATIO, DEFAULT_MIN_COMPACT_SIZE);
+    }
+
+    /**
+     * @param file           store file, created if it does not exist
+     * @param garbageRatio   fraction of file in replaced or removed records which triggers compaction
+     * @param minCompactSize file size below which there is no compaction
+     * @throws IOException if file could not be opened or is not a state store
+     */
+    public JfxMappedStateStore(@NotNull File file, double garbageRatio, int minCompactSize) throws IOException {
+        myFile = file;
+        myGarbageRatio = garbageRatio;
+        myMinCompactSize = minCompactSize;
+        open();
+    }
+
+    /**
+     * State provider for a namespace, one per WebView instance or document
+     *
+     * @param namespace namespace of the provider's keys
+     * @return provider, same instance for same namespace
+     */
+    public synchronized @NotNull JfxScriptStateProvider getProvider(@NotNull String namespace) {
+        if (namespace.indexOf(NAMESPACE_SEPARATOR) >= 0) {
+            throw new IllegalArgumentException("Namespace cannot contain NUL character");
+        }
+        return myNamespaces.computeIfAbsent(namespace, Namespace::new);
+    }
+
+    public synchronized @NotNull Set<String> getNamespaces() {
+        HashSet<String> namespaces = new HashSet<>();
+        for (Map.Entry<String, HashMap<String, Entry>> entry : myIndex.entrySet()) {
+            if (!entry.getValue().isEmpty()) namespaces.add(entry.getKey());
+        }
+        return namespaces;
+    }
+
+    /**
+     * Remove all keys of a namespace
+     *
+     * @param namespace namespace
+     */
+    public synchronized void removeNamespace(@NotNull String namespace) {
+        HashMap<String, Entry> entries = myIndex.get(namespace);
+        if (entries != null) {
+            for (String name : new ArrayList<>(entries.keySet())) {
+                append(namespace, name, null);
+            }
+            myIndex.remove(namespace);
+        }
+
+        Namespace provider = myNamespaces.remove(namespace);
+        if (provider != null) {
+            provider.myState = null;
+            provider.myJson.clear();
+        }
+        maybeCompact();
+    }
+
+    public synchronized int getFileSize() {
+        return myPosition;
+    }
+
+    public synchronized long getGarbageBytes() {
+        return myPosition - HEADER_SIZE - myLiveBytes;
+    }
+
+    public synchronized int getCompactionCount() {
+        return myCompactionCount;
+    }
+
+    /**
+     * Write mapped changes to disk
+     */
+    public synchronized void flush() {
+        if (!myClosed) {
+            myBuffer.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (myClosed) return;
+        myClosed = true;
+        try {
+            myBuffer.force();
+            myChannel.close();
+        } catch (IOException e) {
+            LOG.error("JfxMappedStateStore: close failed", e);
+        }
+    }
+
+    /**
+     * Compact now on the calling thread, the store can be used while the compacted file is written
+     *
+     * @throws IOException if compaction failed, store keeps using the old file
+     */
+    public void compact() throws IOException {
+        synchronized (myCompactionLock) {
+            final ByteBuffer out;
+            final int snapshotPosition;
+
+            synchronized (this) {
+                if (myClosed) return;
+
+                out = ByteBuffer.allocate(HEADER_SIZE + (int) myLiveBytes);
+                out.putInt(MAGIC).putInt(VERSION);
+                for (HashMap<String, Entry> entries : myIndex.values()) {
+                    for (Entry entry : entries.values()) {
+                        ByteBuffer record = myBuffer.duplicate();
+                        record.position(entry.offset);
+                        record.limit(entry.offset + entry.size());
+                        out.put(record);
+                    }
+                }
+                out.flip();
+                snapshotPosition = myPosition;
+            }
+
+            File compacted = new File(myFile.getPath() + ".compact");
+            try (FileChannel channel = FileChannel.open(compacted.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+                channel.force(true);
+
+                synchronized (this) {
+                    if (myClosed) {
+                        channel.close();
+                        Files.deleteIfExists(compacted.toPath());
+                        return;
+                    }
+
+                    if (myPosition > snapshotPosition) {
+                        // records appended while writing, replayed after the snapshot on load
+                        ByteBuffer tail = myBuffer.duplicate();
+                        tail.position(snapshotPosition);
+                        tail.limit(myPosition);
+                        while (tail.hasRemaining()) {
+                            channel.write(tail);
+                        }
+                        channel.force(true);
+                    }
+                    channel.close();
+
+                    myBuffer.force();
+                    myChannel.close();
+                    try {
+                        try {
+                            Files.move(compacted.toPath(), myFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                        } catch (AtomicMoveNotSupportedException e) {
+                            Files.move(compacted.toPath(), myFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                        }
+                        myCompactionCount++;
+                    } finally {
+                        // reopen whichever file is there and rebuild the index with new offsets
+                        open();
+                    }
+                }
+            }
+        }
+    }
+
+    private void maybeCompact() {
+        if (myCompacting || myClosed || myPosition < myMinCompactSize) return;
+        if (getGarbageBytes() > myGarbageRatio * (myPosition - HEADER_SIZE)) {
+            myCompacting = true;
+            Thread thread = new Thread(() -> {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    LOG.error("JfxMappedStateStore: compaction failed", e);
+                } finally {
+                    synchronized (JfxMappedStateStore.this) {
+                        myCompacting = false;
+                    }
+                }
+            }, "JfxMappedStateStore-Compaction");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void open() throws IOException {
+        myChannel = FileChannel.open(myFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = myChannel.size();
+        map((int) Math.max(MIN_CAPACITY, size));
+
+        myIndex.clear();
+        myLiveBytes = 0;
+        if (size == 0) {
+            myBuffer.putInt(0, MAGIC);
+            myBuffer.putInt(4, VERSION);
+            myPosition = HEADER_SIZE;
+            myBuffer.putInt(myPosition, 0);
+        } else if (myBuffer.getInt(0) != MAGIC || myBuffer.getInt(4) != VERSION) {
+            myChannel.close();
+            throw new IOException("Not a state store file: " + myFile);
+        } else {
+            load();
+        }
+    }
+
+    private void map(int capacity) throws IOException {
+        // previous mapping is released when collected
+        myBuffer = myChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private void load() {
+        int capacity = myBuffer.capacity();
+        int pos = HEADER_SIZE;
+        while (pos + RECORD_HEADER_SIZE <= capacity) {
+            int keyLength = myBuffer.getInt(pos);
+            int valueLength = myBuffer.getInt(pos + 4);
+            if (keyLength <= 0 || valueLength < -1) break;
+
+            Entry entry = new Entry(pos, keyLength, Math.max(valueLength, 0));
+            if (pos + entry.size() > capacity) break;
+
+            String key = readString(pos + RECORD_HEADER_SIZE, keyLength);
+            int separator = key.indexOf(NAMESPACE_SEPARATOR);
+            if (separator < 0) break;
+
+            index(key.substring(0, separator), key.substring(separator + 1), valueLength < 0 ? null : entry);
+            pos += entry.size();
+        }
+        myPosition = pos;
+    }
+
+    private void index(@NotNull String namespace, @NotNull String name, @Nullable Entry entry) {
+        HashMap<String, Entry> entries = myIndex.computeIfAbsent(namespace, ns -> new HashMap<>());
+        Entry previous = entry == null ? entries.remove(name) : entries.put(name, entry);
+        if (previous != null) myLiveBytes -= previous.size();
+        if (entry != null) myLiveBytes += entry.size();
+    }
+
+    private @NotNull String readString(int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer buffer = myBuffer.duplicate();
+        buffer.position(offset);
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private @NotNull String readValue(@NotNull Entry entry) {
+        return readString(entry.offset + RECORD_HEADER_SIZE + entry.keyLength, entry.valueLength);
+    }
+
+    private boolean append(@NotNull String namespace, @NotNull String name, @Nullable String json) {
+        if (myClosed) {
+            LOG.warn("JfxMappedStateStore: store closed, " + name + " not saved");
+            return false;
+        }
+
+        byte[] key = (namespace + NAMESPACE_SEPARATOR + name).getBytes(StandardCharsets.UTF_8);
+        byte[] value = json == null ? null : json.getBytes(StandardCharsets.UTF_8);
+        Entry entry = new Entry(myPosition, key.length, value == null ? 0 : value.length);
+
+        try {
+            // room for the record and the terminating key length
+            int needed = myPosition + entry.size() + 4;
+            if (needed > myBuffer.capacity()) {
+                map(Math.max(needed, myBuffer.capacity() * 2));
+            }
+        } catch (IOException e) {
+            LOG.error("JfxMappedStateStore: growing file failed", e);
+            return false;
+        }
+
+        ByteBuffer buffer = myBuffer.duplicate();
+        buffer.position(myPosition + RECORD_HEADER_SIZE);
+        buffer.put(key);
+        if (value != null) buffer.put(value);
+        myBuffer.putInt(myPosition + entry.size(), 0);
+        myBuffer.putInt(myPosition + 4, value == null ? -1 : value.length);
+        myBuffer.putInt(myPosition, key.length);
+
+        myPosition += entry.size();
+        index(namespace, name, value == null ? null : entry);
+        return true;
+    }
+
+    private class Namespace implements JfxScriptStateProvider {
+        final @NotNull String myName;
+        final HashMap<String, String> myJson = new HashMap<>(); // stored JSON of each key
+        @Nullable BoxedJsObject myState;
+
+        Namespace(@NotNull String name) {
+            myName = name;
+        }
+
+        @Override
+        public @NotNull BoxedJsObject getState() {
+            synchronized (JfxMappedStateStore.this) {
+                if (myState == null) {
+                    // parse all values at once
+                    StringBuilder sb = new StringBuilder();
+                    sb.append('{');
+                    HashMap<String, Entry> entries = myIndex.get(myName);
+                    if (entries != null) {
+                        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                            String json = readValue(entry.getValue());
+                            myJson.put(entry.getKey(), json);
+                            if (sb.length() > 1) sb.append(',');
+                            sb.append(BoxedJson.boxedOf(entry.getKey()).toString()).append(':').append(json);
+                        }
+                    }
+                    sb.append('}');
+                    myState = BoxedJson.boxedFrom(sb.toString());
+                }
+                return myState;
+            }
+        }
+
+        @Override
+        public void setState(@NotNull BoxedJsObject state) {
+            synchronized (JfxMappedStateStore.this) {
+                if (myState == null) getState();
+                myState = state;
+
+                HashSet<String> removed = new HashSet<>(myJson.keySet());
+                for (Map.Entry<String, JsonValue> entry : state.entrySet()) {
+                    String name = entry.getKey();
+                    String json = entry.getValue().toString();
+                    removed.remove(name);
+
+                    if (!json.equals(myJson.get(name)) && append(myName, name, json)) {
+                        myJson.put(name, json);
+                    }
+                }
+
+                for (String name : removed) {
+                    if (append(myName, name, null)) {
+                        myJson.remove(name);
+                    }
+                }
+                maybeCompact();
+            }
+        }
+    }
+}
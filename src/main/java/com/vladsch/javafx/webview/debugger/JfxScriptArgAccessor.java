@@ -28,4 +28,12 @@ package com.vladsch.javafx.webview.debugger;
 public interface JfxScriptArgAccessor {
     Object getArg();
     Object getConsoleArg();
+
+    /**
+     * @param handle handle of value staged by the debugger access
+     * @return staged value, null if handle was released or belongs to a previous page
+     */
+    default Object getStagedArg(int handle) {
+        return null;
+    }
 }
@@ -39,4 +39,8 @@ public class JfxScriptArgAccessorDelegate implements JfxScriptArgAccessor {
     @Override public Object getConsoleArg() {
         return myAccessor.getConsoleArg();
     }
+
+    @Override public Object getStagedArg(final int handle) {
+        return myAccessor.getStagedArg(handle);
+    }
 }
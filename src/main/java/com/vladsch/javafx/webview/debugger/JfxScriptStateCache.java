@@ -0,0 +1,236 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import com.vladsch.boxed.json.BoxedJsObject;
+import com.vladsch.boxed.json.BoxedJsValue;
+import com.vladsch.boxed.json.BoxedJson;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Write-behind cache between script {@code setState} calls and a {@link JfxScriptStateProvider}
+ * <p>
+ * Values equal to the last one stored for the key, compared by JSON text when their hashes match, are ignored. Changed keys
+ * are held as dirty until flushed to the provider, either after the debounce delay from the first change or
+ * when {@link #flush()} is called before the page goes away or the provider state is read. Values from scripts
+ * are kept as JSON text and only parsed when flushed.
+ * <p>
+ * Not thread safe, used on the dispatch thread.
+ */
+class JfxScriptStateCache {
+    final static LogHandler LOG = LogHandler.getInstance();
+
+    private static class Pending {
+        final @Nullable BoxedJsValue value; // null for removed or not yet parsed
+        final @Nullable String json;        // null for removed or already a value
+
+        Pending(@Nullable BoxedJsValue value, @Nullable String json) {
+            this.value = value;
+            this.json = json;
+        }
+
+        boolean isRemoved() {
+            return value == null && json == null;
+        }
+
+        @NotNull String toJson() {
+            return json != null ? json : String.valueOf(value);
+        }
+    }
+
+    private final @NotNull JfxScriptStateProvider myProvider;
+    private final @NotNull JfxDispatcher myDispatcher;
+    private final HashMap<String, Integer> myHashes = new HashMap<>(); // key to hash of last value JSON
+    private final LinkedHashMap<String, Pending> myDirty = new LinkedHashMap<>(); // keys changed since last flush
+    private long myDebounceMillis;
+    private boolean myFlushScheduled;
+    private @Nullable String myStateJson; // provider state as JSON, reset when state is written
+    private long myFlushCount;
+    private long mySkippedCount;
+
+    JfxScriptStateCache(@NotNull JfxScriptStateProvider provider, @NotNull JfxDispatcher dispatcher, long debounceMillis) {
+        myProvider = provider;
+        myDispatcher = dispatcher;
+        myDebounceMillis = debounceMillis;
+    }
+
+    long getDebounceMillis() {
+        return myDebounceMillis;
+    }
+
+    /**
+     * @param debounceMillis delay before dirty keys are written to provider, 0 to write on every change
+     */
+    void setDebounceMillis(long debounceMillis) {
+        myDebounceMillis = debounceMillis;
+        if (debounceMillis <= 0) flush();
+    }
+
+    /**
+     * @return times provider state was set
+     */
+    long getFlushCount() {
+        return myFlushCount;
+    }
+
+    /**
+     * @return changes ignored because value was the same
+     */
+    long getSkippedCount() {
+        return mySkippedCount;
+    }
+
+    boolean isDirty() {
+        return !myDirty.isEmpty();
+    }
+
+    /**
+     * @return JSON of whole provider state after flushing changes, serialized again only after state changed
+     */
+    @NotNull String getStateJson() {
+        flush();
+        if (myStateJson == null) {
+            myStateJson = myProvider.getState().toString();
+        }
+        return myStateJson;
+    }
+
+    /**
+     * Forget cached JSON and value hashes, provider state was changed by someone else
+     */
+    void invalidate() {
+        flush();
+        myHashes.clear();
+        myStateJson = null;
+    }
+
+    /**
+     * @param name state key
+     * @return JSON of current value, including changes not yet flushed, null if no value
+     */
+    @Nullable String getJson(@NotNull String name) {
+        Pending pending = myDirty.get(name);
+        if (pending != null) {
+            return pending.isRemoved() ? null : pending.toJson();
+        }
+
+        BoxedJsValue state = myProvider.getState().get(name);
+        return state.isValid() ? state.toString() : null;
+    }
+
+    /**
+     * Set value from a Java object
+     *
+     * @param name  state key
+     * @param value value or null to remove
+     */
+    void setValue(@NotNull String name, @Nullable BoxedJsValue value) {
+        set(name, value == null || !value.isValid() ? null : new Pending(value, null));
+    }
+
+    /**
+     * Set value from JSON text, parsed when flushed
+     *
+     * @param name state key
+     * @param json JSON or null to remove
+     */
+    void setJson(@NotNull String name, @Nullable String json) {
+        set(name, json == null ? null : new Pending(null, json));
+    }
+
+    private void set(@NotNull String name, @Nullable Pending pending) {
+        Integer hash = myHashes.get(name);
+        if (hash == null) {
+            // first change since load, hash what provider has
+            BoxedJsValue state = myProvider.getState().get(name);
+            if (state.isValid()) hash = state.toString().hashCode();
+        }
+
+        String json = pending == null ? null : pending.toJson();
+        int jsonHash = json == null ? 0 : json.hashCode();
+
+        // equal hashes can come from different JSON, only text of the stored value is conclusive
+        if (json == null ? hash == null : hash != null && hash == jsonHash && json.equals(getJson(name))) {
+            mySkippedCount++;
+            return;
+        }
+
+        if (pending == null) {
+            myHashes.remove(name);
+            myDirty.put(name, new Pending(null, null));
+        } else {
+            myHashes.put(name, jsonHash);
+            myDirty.put(name, pending);
+        }
+
+        if (myDebounceMillis <= 0) {
+            flush();
+        } else if (!myFlushScheduled) {
+            myFlushScheduled = true;
+            myDispatcher.runLater(this::flush, myDebounceMillis);
+        }
+    }
+
+    /**
+     * Write dirty keys to provider state and let the provider save it
+     */
+    void flush() {
+        myFlushScheduled = false;
+        if (myDirty.isEmpty()) return;
+
+        BoxedJsObject scriptState = myProvider.getState();
+        for (Map.Entry<String, Pending> entry : myDirty.entrySet()) {
+            String name = entry.getKey();
+            Pending pending = entry.getValue();
+            scriptState.remove(name);
+
+            if (!pending.isRemoved()) {
+                try {
+                    BoxedJsValue value = pending.value != null ? pending.value : BoxedJson.boxedFrom(pending.json);
+                    if (value.isValid()) {
+                        scriptState.put(name, value);
+                    } else {
+                        myHashes.remove(name);
+                    }
+                } catch (Throwable e) {
+                    myHashes.remove(name);
+                    LOG.error(e);
+                }
+            }
+        }
+        myDirty.clear();
+        myStateJson = null;
+
+        // strictly a formality since the state is mutable, but lets provider save/cache or whatever else
+        myFlushCount++;
+        myProvider.setState(scriptState);
+    }
+}
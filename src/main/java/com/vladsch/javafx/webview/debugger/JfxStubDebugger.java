@@ -0,0 +1,445 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import com.sun.javafx.scene.web.Debugger;
+import javafx.util.Callback;
+import netscape.javascript.JSObject;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stand-in for the WebView debugger which simulates its behavior without a WebEngine
+ * <p>
+ * Sends script parsed events on Debugger.enable and page reload, page context on Runtime.enable,
+ * answers DOM requests from a generated tree, pauses asynchronously and resumes like WebView,
+ * and can make console log calls to the proxy at a fixed rate.
+ * <p>
+ * All messages are expected on the dispatcher thread, results are sent back synchronously and
+ * events which WebView sends later are sent through the dispatcher.
+ */
+public class JfxStubDebugger implements Debugger {
+    final static LogHandler LOG = LogHandler.getInstance();
+    private static ScheduledExecutorService ourTimer;
+
+    public static class Config {
+        public int scripts = 10;
+        public int domBreadth = 4;
+        public int domDepth = 6;
+        public int callFrames = 4;
+        public int scopes = 3;
+
+        public Config() {
+
+        }
+
+        public Config(int scripts, int domBreadth, int domDepth, int callFrames) {
+            this.scripts = scripts;
+            this.domBreadth = domBreadth;
+            this.domDepth = domDepth;
+            this.callFrames = callFrames;
+        }
+    }
+
+    /**
+     * Console log arguments as passed by the page to the proxy
+     */
+    public static class ConsoleArgs extends JSObject {
+        private final Object[] myArgs;
+
+        public ConsoleArgs(Object... args) {
+            myArgs = args;
+        }
+
+        @Override
+        public Object call(final String methodName, final Object... args) {
+            return null;
+        }
+
+        @Override
+        public Object eval(final String s) {
+            return null;
+        }
+
+        @Override
+        public Object getMember(final String name) {
+            return "length".equals(name) ? myArgs.length : null;
+        }
+
+        @Override
+        public void setMember(final String name, final Object value) {
+
+        }
+
+        @Override
+        public void removeMember(final String name) {
+
+        }
+
+        @Override
+        public Object getSlot(final int index) {
+            return index >= 0 && index < myArgs.length ? myArgs[index] : null;
+        }
+
+        @Override
+        public void setSlot(final int index, final Object value) {
+            if (index >= 0 && index < myArgs.length) myArgs[index] = value;
+        }
+    }
+
+    private final @NotNull JfxDispatcher myDispatcher;
+    private final @NotNull Config myConfig;
+    private final HashMap<Integer, int[]> myDomChildren = new HashMap<>();
+    private Callback<String, Void> myCallback;
+    private boolean myEnabled;
+    private boolean myPaused;
+    private boolean myPausePending;
+    private int myContextId;
+    private int myPageLoad;
+    private int myNextNodeId;
+    private int myRootNodeId;
+    private long mySentCount;
+    private long myEventCount;
+    private long myConsoleCount;
+    private @Nullable ScheduledFuture<?> myConsoleTask;
+
+    public JfxStubDebugger(@NotNull JfxDispatcher dispatcher, @NotNull Config config) {
+        myDispatcher = dispatcher;
+        myConfig = config;
+        buildDom();
+    }
+
+    public long getSentCount() {
+        return mySentCount;
+    }
+
+    public long getEventCount() {
+        return myEventCount;
+    }
+
+    public long getConsoleCount() {
+        return myConsoleCount;
+    }
+
+    public boolean isPaused() {
+        return myPaused;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return myEnabled;
+    }
+
+    @Override
+    public void setEnabled(final boolean enabled) {
+        myEnabled = enabled;
+    }
+
+    @Override
+    public Callback<String, Void> getMessageCallback() {
+        return myCallback;
+    }
+
+    @Override
+    public void setMessageCallback(final Callback<String, Void> callback) {
+        myCallback = callback;
+    }
+
+    @Override
+    public void sendMessage(final String message) {
+        mySentCount++;
+        final String method = JfxDebuggerMetrics.messageMethod(message);
+        final int id = JfxDebuggerMetrics.messageId(message, false);
+        if (method == null) return;
+
+        switch (method) {
+            case "Runtime.enable":
+                sendEvent(executionContextCreated());
+                sendResult(id, "{}");
+                break;
+
+            case "Debugger.enable":
+                sendScriptsParsed();
+                sendResult(id, "{}");
+                break;
+
+            case "DOM.getDocument":
+                sendResult(id, "{\"root\":" + domNode(myRootNodeId, myConfig.domDepth + 1) + "}");
+                break;
+
+            case "DOM.requestChildNodes": {
+                int nodeId = intParam(message, "nodeId");
+                sendResult(id, "{}");
+                if (myDomChildren.containsKey(nodeId)) {
+                    sendEvent("{\"method\":\"DOM.setChildNodes\",\"params\":{\"parentId\":" + nodeId + ",\"nodes\":" + domChildren(nodeId, 1) + "}}");
+                }
+                break;
+            }
+
+            case "Debugger.pause":
+                sendResult(id, "{}");
+                if (!myPaused && !myPausePending) {
+                    // WebView pauses on the next statement, not while handling the request
+                    myPausePending = true;
+                    myDispatcher.runLater(this::sendPaused);
+                }
+                break;
+
+            case "Debugger.resume":
+                sendResult(id, "{}");
+                resume(false);
+                break;
+
+            case "Debugger.stepOver":
+            case "Debugger.stepInto":
+            case "Debugger.stepOut":
+                sendResult(id, "{}");
+                resume(true);
+                break;
+
+            case "Runtime.evaluate":
+            case "Debugger.evaluateOnCallFrame":
+                sendResult(id, "{\"result\":{\"type\":\"string\",\"value\":\"stub\"},\"wasThrown\":false}");
+                break;
+
+            case "Debugger.setBreakpointByUrl": {
+                int lineNumber = intParam(message, "lineNumber");
+                sendResult(id, "{\"breakpointId\":\"http://localhost/stub/script-0.js:" + lineNumber + ":0\",\"locations\":[{\"scriptId\":\"1\",\"lineNumber\":" + lineNumber + ",\"columnNumber\":0}]}");
+                break;
+            }
+
+            case "Page.reload":
+                sendResult(id, "{}");
+                myDispatcher.runLater(this::reloadPage);
+                break;
+
+            default:
+                sendResult(id, "{}");
+                break;
+        }
+    }
+
+    /**
+     * Simulate page reload: resume if paused, clear global object, new page context, scripts parsed
+     */
+    public void reloadPage() {
+        if (myPaused) resume(false);
+        myPausePending = false;
+        myPageLoad++;
+        sendEvent("{\"method\":\"Debugger.globalObjectCleared\"}");
+        sendEvent(executionContextCreated());
+        sendScriptsParsed();
+        buildDom();
+        sendEvent("{\"method\":\"DOM.documentUpdated\"}");
+    }
+
+    /**
+     * Start console log calls to proxy, made on dispatcher thread
+     *
+     * @param proxy     proxy which receives the calls
+     * @param perSecond calls per second
+     */
+    public void startConsoleLog(@NotNull JfxDebuggerProxy proxy, double perSecond) {
+        stopConsoleLog();
+        if (perSecond <= 0) return;
+
+        long periodNanos = (long) (1000000000L / perSecond);
+        myConsoleTask = getTimer().scheduleAtFixedRate(() -> myDispatcher.runLater(() -> {
+            // page scripts do not run while paused
+            if (myEnabled && !myPaused && !myPausePending) {
+                myConsoleCount++;
+                proxy.log("log", System.currentTimeMillis() * 1000000, new ConsoleArgs("stub console log", myConsoleCount));
+            }
+        }), periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void stopConsoleLog() {
+        ScheduledFuture<?> consoleTask = myConsoleTask;
+        if (consoleTask != null) {
+            myConsoleTask = null;
+            consoleTask.cancel(false);
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getTimer() {
+        if (ourTimer == null) {
+            ourTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "JfxStubDebugger-Timer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return ourTimer;
+    }
+
+    private void resume(boolean step) {
+        if (!myPaused) return;
+
+        myPaused = false;
+        sendEvent("{\"method\":\"Debugger.resumed\"}");
+        if (step) {
+            myPausePending = true;
+            myDispatcher.runLater(this::sendPaused);
+        }
+    }
+
+    private void sendPaused() {
+        if (!myPausePending) return;
+
+        myPausePending = false;
+        myPaused = true;
+        sendEvent(debuggerPaused());
+    }
+
+    private void sendScriptsParsed() {
+        for (int i = 0; i < myConfig.scripts; i++) {
+            sendEvent(String.format("{\"method\":\"Debugger.scriptParsed\",\"params\":{\"scriptId\":\"%d\",\"url\":\"http://localhost/stub/script-%d.js\",\"startLine\":0,\"startColumn\":0,\"endLine\":200,\"endColumn\":0}}",
+                    myPageLoad * myConfig.scripts + i + 1, i));
+        }
+    }
+
+    private String executionContextCreated() {
+        myContextId++;
+        return "{\"method\":\"Runtime.executionContextCreated\",\"params\":{\"context\":{\"id\":" + myContextId + ",\"isPageContext\":true,\"name\":\"\",\"frameId\":\"0.1\"}}}";
+    }
+
+    private String debuggerPaused() {
+        StringBuilder sb = new StringBuilder();
+        int objectId = 1000;
+        sb.append("{\"method\":\"Debugger.paused\",\"params\":{\"callFrames\":[");
+        for (int f = 0; f < myConfig.callFrames; f++) {
+            if (f > 0) sb.append(',');
+            sb.append("{\"callFrameId\":\"{\\\"ordinal\\\":").append(f).append(",\\\"injectedScriptId\\\":").append(myContextId).append("}\",\"functionName\":\"")
+                    .append(f == 0 ? "consoleLog" : "stubFunction" + f).append("\",")
+                    .append("\"location\":{\"scriptId\":\"").append(myPageLoad * myConfig.scripts + 1 + f % Math.max(1, myConfig.scripts))
+                    .append("\",\"lineNumber\":").append(10 + f).append(",\"columnNumber\":8},\"scopeChain\":[");
+            for (int s = 0; s < myConfig.scopes; s++) {
+                if (s > 0) sb.append(',');
+                sb.append("{\"object\":{\"type\":\"object\",\"objectId\":\"{\\\"injectedScriptId\\\":").append(myContextId).append(",\\\"id\\\":").append(objectId++).append("}\",")
+                        .append(s == myConfig.scopes - 1 ? "\"className\":\"Window\",\"description\":\"Window\"},\"type\":\"global\"}"
+                                : "\"className\":\"JSLexicalEnvironment\",\"description\":\"JSLexicalEnvironment\"},\"type\":\"" + (s == 0 ? "local" : "closure") + "\"}");
+            }
+            sb.append("]}");
+        }
+        sb.append("],\"reason\":\"other\"}}");
+        return sb.toString();
+    }
+
+    private void buildDom() {
+        myDomChildren.clear();
+        myNextNodeId = 1;
+        myRootNodeId = myNextNodeId++;
+        int htmlId = myNextNodeId++;
+        myDomChildren.put(myRootNodeId, new int[] { htmlId });
+        buildDom(htmlId, myConfig.domDepth);
+    }
+
+    private void buildDom(int nodeId, int depth) {
+        if (depth <= 0) return;
+
+        int[] children = new int[myConfig.domBreadth];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = myNextNodeId++;
+        }
+        myDomChildren.put(nodeId, children);
+
+        for (int childId : children) {
+            buildDom(childId, depth - 1);
+        }
+    }
+
+    private String domNode(int nodeId, int depth) {
+        int[] children = myDomChildren.get(nodeId);
+        int childCount = children == null ? 0 : children.length;
+        StringBuilder sb = new StringBuilder();
+
+        if (nodeId == myRootNodeId) {
+            sb.append("{\"nodeId\":").append(nodeId).append(",\"nodeType\":9,\"nodeName\":\"#document\",\"localName\":\"\",\"nodeValue\":\"\",\"childNodeCount\":").append(childCount)
+                    .append(",\"documentURL\":\"http://localhost/stub/index.html\",\"baseURL\":\"http://localhost/stub/index.html\",\"xmlVersion\":\"\"");
+        } else {
+            String name = myDomChildren.get(myRootNodeId)[0] == nodeId ? "html" : "div";
+            sb.append("{\"nodeId\":").append(nodeId).append(",\"nodeType\":1,\"nodeName\":\"").append(name.toUpperCase()).append("\",\"localName\":\"").append(name)
+                    .append("\",\"nodeValue\":\"\",\"childNodeCount\":").append(childCount).append(",\"attributes\":[\"id\",\"n-").append(nodeId).append("\"]");
+        }
+
+        if (depth > 0 && childCount > 0) {
+            sb.append(",\"children\":").append(domChildren(nodeId, depth));
+        }
+        return sb.append("}").toString();
+    }
+
+    private String domChildren(int nodeId, int depth) {
+        int[] children = myDomChildren.get(nodeId);
+        StringBuilder sb = new StringBuilder("[");
+        if (children != null) {
+            for (int i = 0; i < children.length; i++) {
+                if (i > 0) sb.append(',');
+                sb.append(domNode(children[i], depth - 1));
+            }
+        }
+        return sb.append("]").toString();
+    }
+
+    private static int intParam(String message, String name) {
+        int pos = message.indexOf("\"" + name + "\"");
+        if (pos < 0) return 0;
+        int i = message.indexOf(':', pos) + 1;
+        int iMax = message.length();
+        while (i < iMax && message.charAt(i) == ' ') i++;
+        int value = 0;
+        while (i < iMax) {
+            char c = message.charAt(i++);
+            if (c < '0' || c > '9') break;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private void sendResult(int id, String result) {
+        if (id > 0) {
+            sendEvent("{\"result\":" + result + ",\"id\":" + id + "}");
+        }
+    }
+
+    private void sendEvent(String message) {
+        Callback<String, Void> callback = myCallback;
+        if (callback != null) {
+            myEventCount++;
+            try {
+                callback.call(message);
+            } catch (Throwable t) {
+                LOG.error("Exception in debugger callback", t);
+            }
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes proxy activity as trace event JSON for chrome://tracing and Perfetto
+ * <p>
+ * Callers only queue events, formatting and writing is done by a daemon thread. If the queue is
+ * full events are dropped and counted. Spans carry the CDP id in their args, async spans for
+ * thread hops use it as the async id so they can be followed across threads.
+ */
+public class JfxTraceWriter {
+    public static final int DEFAULT_CAPACITY = 65536;
+
+    public static final String CAT_COMMAND = "command";
+    public static final String CAT_EVENT = "event";
+    public static final String CAT_INTERNAL = "internal";
+    public static final String CAT_HOP = "hop";
+    public static final String CAT_CONSOLE = "console";
+
+    private static final Event STOP = new Event('M', "", "", 0, 0, 0, 0);
+
+    private final LogHandler LOG = LogHandler.getInstance();
+    private final ArrayBlockingQueue<Event> myQueue;
+    private final AtomicLong myDropped = new AtomicLong(0);
+    private final AtomicLong myNextHopId = new AtomicLong(1);
+    private final ConcurrentHashMap<Long, String> myThreadNames = new ConcurrentHashMap<>();
+    private final Writer myWriter;
+    private final long myStartNanos;
+    private final Thread myThread;
+    private volatile boolean myClosed;
+
+    private static class Event {
+        final char phase;
+        final @NotNull String name;
+        final @NotNull String category;
+        final long nanos;
+        final long durationNanos;
+        final long threadId;
+        final long id;
+
+        Event(char phase, @NotNull String name, @NotNull String category, long nanos, long durationNanos, long threadId, long id) {
+            this.phase = phase;
+            this.name = name;
+            this.category = category;
+            this.nanos = nanos;
+            this.durationNanos = durationNanos;
+            this.threadId = threadId;
+            this.id = id;
+        }
+    }
+
+    public JfxTraceWriter(@NotNull File file) throws IOException {
+        this(file, DEFAULT_CAPACITY);
+    }
+
+    public JfxTraceWriter(@NotNull File file, int capacity) throws IOException {
+        myQueue = new ArrayBlockingQueue<>(capacity);
+        myWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, false), StandardCharsets.UTF_8), 65536);
+        myWriter.write("[\n");
+        myStartNanos = System.nanoTime();
+
+        myThread = new Thread(this::run, "JfxWebViewDebugger-TraceWriter");
+        myThread.setDaemon(true);
+        myThread.start();
+    }
+
+    public long getDroppedCount() {
+        return myDropped.get();
+    }
+
+    /**
+     * Complete span from start to now on the current thread
+     *
+     * @param name       span name
+     * @param category   category
+     * @param startNanos {@link System#nanoTime()} at start of span
+     * @param cdpId      CDP id or 0
+     */
+    public void span(@NotNull String name, @NotNull String category, long startNanos, long cdpId) {
+        offer('X', name, category, startNanos, System.nanoTime() - startNanos, cdpId);
+    }
+
+    public void instant(@NotNull String name, @NotNull String category, long cdpId) {
+        offer('i', name, category, System.nanoTime(), 0, cdpId);
+    }
+
+    /**
+     * Start async span which may end on another thread
+     *
+     * @param name     span name, same for end
+     * @param category category, same for end
+     * @param id       async id, same for end
+     */
+    public void asyncBegin(@NotNull String name, @NotNull String category, long id) {
+        offer('b', name, category, System.nanoTime(), 0, id);
+    }
+
+    public void asyncEnd(@NotNull String name, @NotNull String category, long id) {
+        offer('e', name, category, System.nanoTime(), 0, id);
+    }
+
+    /**
+     * @return unique id for a thread hop async span
+     */
+    public long nextHopId() {
+        return myNextHopId.getAndIncrement();
+    }
+
+    /**
+     * Wrap runnable in a thread hop async span
+     *
+     * @param name     hop name
+     * @param runnable runnable to run after the hop
+     *
+     * @return wrapped runnable
+     */
+    public @NotNull Runnable hop(@NotNull String name, @NotNull Runnable runnable) {
+        final long id = nextHopId();
+        asyncBegin(name, CAT_HOP, id);
+        return () -> {
+            asyncEnd(name, CAT_HOP, id);
+            runnable.run();
+        };
+    }
+
+    private void offer(char phase, String name, String category, long nanos, long durationNanos, long id) {
+        if (myClosed) return;
+
+        Thread thread = Thread.currentThread();
+        long threadId = thread.getId();
+        if (!myThreadNames.containsKey(threadId)) {
+            myThreadNames.put(threadId, thread.getName());
+            offer(new Event('M', thread.getName(), "", nanos, 0, threadId, 0));
+        }
+
+        offer(new Event(phase, name, category, nanos, durationNanos, threadId, id));
+    }
+
+    private void offer(Event event) {
+        if (!myQueue.offer(event)) {
+            myDropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Stop writing, queued events are written out before the file is closed
+     */
+    public void close() {
+        if (myClosed) return;
+        myClosed = true;
+
+        try {
+            myQueue.put(STOP);
+            myThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        StringBuilder sb = new StringBuilder(256);
+        try {
+            boolean first = true;
+            while (true) {
+                Event event = myQueue.take();
+                if (event == STOP) break;
+
+                sb.setLength(0);
+                if (!first) sb.append(",\n");
+                first = false;
+                appendEvent(sb, event);
+                myWriter.append(sb);
+
+                if (myQueue.isEmpty()) {
+                    myWriter.flush();
+                }
+            }
+
+            long dropped = myDropped.get();
+            if (dropped > 0) {
+                sb.setLength(0);
+                sb.append(first ? "" : ",\n");
+                appendEvent(sb, new Event('i', "dropped " + dropped + " events", CAT_INTERNAL, System.nanoTime(), 0, Thread.currentThread().getId(), 0));
+                myWriter.append(sb);
+            }
+            myWriter.write("\n]\n");
+        } catch (InterruptedException ignored) {
+            // daemon thread, file is still readable without the closing bracket
+        } catch (IOException e) {
+            LOG.error("Error writing trace", e);
+        } finally {
+            try {
+                myWriter.close();
+            } catch (IOException e) {
+                LOG.error("Error closing trace", e);
+            }
+        }
+    }
+
+    private void appendEvent(StringBuilder sb, Event event) {
+        if (event.phase == 'M') {
+            sb.append("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":").append(event.threadId).append(",\"args\":{\"name\":");
+            appendString(sb, event.name);
+            sb.append("}}");
+            return;
+        }
+
+        sb.append("{\"name\":");
+        appendString(sb, event.name);
+        sb.append(",\"cat\":\"").append(event.category).append("\",\"ph\":\"").append(event.phase).append("\",\"ts\":");
+        appendMicros(sb, event.nanos - myStartNanos);
+        sb.append(",\"pid\":1,\"tid\":").append(event.threadId);
+
+        switch (event.phase) {
+            case 'X':
+                sb.append(",\"dur\":");
+                appendMicros(sb, event.durationNanos);
+                break;
+            case 'i':
+                sb.append(",\"s\":\"t\"");
+                break;
+            case 'b':
+            case 'e':
+                sb.append(",\"id\":").append(event.id);
+                break;
+        }
+
+        if (event.id != 0) {
+            sb.append(",\"args\":{\"id\":").append(event.id).append("}");
+        }
+        sb.append("}");
+    }
+
+    private static void appendMicros(StringBuilder sb, long nanos) {
+        sb.append(nanos / 1000).append('.');
+        long fraction = nanos % 1000;
+        if (fraction < 100) sb.append('0');
+        if (fraction < 10) sb.append('0');
+        sb.append(fraction);
+    }
+
+    private static void appendString(StringBuilder sb, String text) {
+        sb.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -71,7 +71,7 @@ public class JfxWebSocketServer extends WebSocketServer {
             return false;
         }
 
-        if (LOG.isDebugEnabled()) System.out.println("sending to " + conn.getRemoteSocketAddress() + ": " + data);
+        if (LOG.isDebugEnabled()) AsyncLogAppender.getInstance().println("sending to " + conn.getRemoteSocketAddress() + ": " + data);
         try {
             conn.send(data);
         } catch (WebsocketNotConnectedException e) {
@@ -123,15 +123,13 @@ public class JfxWebSocketServer extends WebSocketServer {
         String resourceId = conn.getResourceDescriptor();
 
         if (!myConnections.containsKey(resourceId)) {
-            System.out.println("new connection to " + conn.getRemoteSocketAddress() + " rejected");
-            if (LOG.isDebugEnabled()) System.out.println("new connection to " + conn.getRemoteSocketAddress() + " rejected");
+            AsyncLogAppender.getInstance().println("new connection to " + conn.getRemoteSocketAddress() + " rejected");
             conn.close(CloseFrame.REFUSE, "No JavaFX WebView Debugger Instance");
         } else {
             WebSocket otherConn = myConnections.get(resourceId);
             if (otherConn != null) {
                 // We will disconnect the other
-                System.out.println("closing old connection to " + conn.getRemoteSocketAddress());
-                if (LOG.isDebugEnabled()) System.out.println("closing old connection to " + conn.getRemoteSocketAddress());
+                AsyncLogAppender.getInstance().println("closing old connection to " + conn.getRemoteSocketAddress());
                 otherConn.close(CloseFrame.GOING_AWAY, "New Dev Tools connected");
             }
 
@@ -139,8 +137,7 @@ public class JfxWebSocketServer extends WebSocketServer {
             if (myServers.containsKey(resourceId)) {
                 myServers.get(resourceId).onOpen();
             }
-            System.out.println("new connection to " + conn.getRemoteSocketAddress());
-            if (LOG.isDebugEnabled()) System.out.println("new connection to " + conn.getRemoteSocketAddress());
+            AsyncLogAppender.getInstance().println("new connection to " + conn.getRemoteSocketAddress());
         }
     }
 
@@ -154,8 +151,7 @@ public class JfxWebSocketServer extends WebSocketServer {
             if (myServers.containsKey(resourceId)) {
                 myServers.get(resourceId).onClosed(code, reason, remote);
             }
-            System.out.println("closed " + conn.getRemoteSocketAddress() + " with exit code " + code + " additional info: " + reason);
-            if (LOG.isDebugEnabled()) System.out.println("closed " + conn.getRemoteSocketAddress() + " with exit code " + code + " additional info: " + reason);
+            AsyncLogAppender.getInstance().println("closed " + conn.getRemoteSocketAddress() + " with exit code " + code + " additional info: " + reason);
         }
     }
 
@@ -165,17 +161,16 @@ public class JfxWebSocketServer extends WebSocketServer {
 
         if (myServers.containsKey(resourceId)) {
             myServers.get(resourceId).sendMessageToBrowser(message);
-            if (LOG.isDebugEnabled()) System.out.println("received from " + conn.getRemoteSocketAddress() + ": " + message);
+            if (LOG.isDebugEnabled()) AsyncLogAppender.getInstance().println("received from " + conn.getRemoteSocketAddress() + ": " + message);
         } else {
-            System.out.println("connection to " + conn.getRemoteSocketAddress() + " closed");
-            if (LOG.isDebugEnabled()) System.out.println("connection to " + conn.getRemoteSocketAddress() + " closed");
+            AsyncLogAppender.getInstance().println("connection to " + conn.getRemoteSocketAddress() + " closed");
             conn.close();
         }
     }
 
     @Override
     public void onMessage(WebSocket conn, ByteBuffer message) {
-        if (LOG.isDebugEnabled()) System.out.println("received ByteBuffer from " + conn.getRemoteSocketAddress());
+        if (LOG.isDebugEnabled()) AsyncLogAppender.getInstance().println("received ByteBuffer from " + conn.getRemoteSocketAddress());
     }
 
     @Override
@@ -191,12 +186,12 @@ public class JfxWebSocketServer extends WebSocketServer {
     public void onError(WebSocket conn, Exception ex) {
         if (conn == null) {
             if (LOG.isDebugEnabled()) {
-                System.err.println("an error occurred on connection null :" + ex);
+                AsyncLogAppender.getInstance().printlnErr("an error occurred on connection null :" + ex);
                 LOG.error("an error occurred on connection null :", ex);
             }
         } else {
             if (LOG.isDebugEnabled()) {
-                System.err.println("an error occurred on connection " + conn.getRemoteSocketAddress() + ":" + ex);
+                AsyncLogAppender.getInstance().printlnErr("an error occurred on connection " + conn.getRemoteSocketAddress() + ":" + ex);
                 LOG.error("an error occurred on connection " + conn.getRemoteSocketAddress() + ":", ex);
             }
         }
@@ -218,7 +213,7 @@ public class JfxWebSocketServer extends WebSocketServer {
             start.accept(this);
         }
         if (LOG.isDebugEnabled()) {
-            System.out.println("server started successfully");
+            AsyncLogAppender.getInstance().println("server started successfully");
             LOG.debug("server started successfully");
         }
     }
@@ -27,6 +27,8 @@ package com.vladsch.javafx.webview.debugger;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.util.function.Supplier;
+
 public abstract class LogHandler {
     // NOTE: this avoids conflicts with loading Logger in IntelliJ, set LogHandler.LOG_HANDLER by application
     public static LogHandler LOG_HANDLER = LogHandler.NULL;
@@ -69,6 +71,56 @@ public abstract class LogHandler {
 
     public abstract void warn(@NotNull Throwable t);
 
+    // lazy variants: message is only built if the level is enabled
+    // fixed arity ones do not allocate an args array, int ones do not box, use them on frequent calls
+    public void trace(@NotNull Supplier<String> message) {
+        if (isTraceEnabled()) trace(message.get());
+    }
+
+    public void trace(@NotNull String format, int arg1) {
+        if (isTraceEnabled()) trace(String.format(format, arg1));
+    }
+
+    public void trace(@NotNull String format, Object arg1) {
+        if (isTraceEnabled()) trace(String.format(format, arg1));
+    }
+
+    public void trace(@NotNull String format, Object arg1, int arg2) {
+        if (isTraceEnabled()) trace(String.format(format, arg1, arg2));
+    }
+
+    public void trace(@NotNull String format, Object arg1, Object arg2) {
+        if (isTraceEnabled()) trace(String.format(format, arg1, arg2));
+    }
+
+    public void trace(@NotNull String format, Object... args) {
+        if (isTraceEnabled()) trace(String.format(format, args));
+    }
+
+    public void debug(@NotNull Supplier<String> message) {
+        if (isDebugEnabled()) debug(message.get());
+    }
+
+    public void debug(@NotNull String format, int arg1) {
+        if (isDebugEnabled()) debug(String.format(format, arg1));
+    }
+
+    public void debug(@NotNull String format, Object arg1) {
+        if (isDebugEnabled()) debug(String.format(format, arg1));
+    }
+
+    public void debug(@NotNull String format, Object arg1, int arg2) {
+        if (isDebugEnabled()) debug(String.format(format, arg1, arg2));
+    }
+
+    public void debug(@NotNull String format, Object arg1, Object arg2) {
+        if (isDebugEnabled()) debug(String.format(format, arg1, arg2));
+    }
+
+    public void debug(@NotNull String format, Object... args) {
+        if (isDebugEnabled()) debug(String.format(format, args));
+    }
+
     final public static LogHandler NULL = new LogHandler() {
         public @Override
         void trace(@NotNull String message) {}
@@ -89,10 +89,20 @@ window.console = console;
 markdownNavigator = (function () {
     "use strict";
 
-    // FIX: change this for real implementation using computed CSS properties of element
-    // and an overlay element
+    // class highlight is used when no highlightConfig is given, otherwise an overlay element
+    // is positioned over the node, leaving the page's elements untouched
     const HIGHLIGHT = "markdown-navigator-highlight";
+    const HIGHLIGHT_OVERLAY = "markdown-navigator-highlight-overlay";
+    const DEFAULT_HIGHLIGHT_CONFIG = {
+        showInfo: true,
+        contentColor: { r: 111, g: 168, b: 220, a: 0.66 },
+        paddingColor: { r: 147, g: 196, b: 125, a: 0.55 },
+        borderColor: { r: 255, g: 229, b: 153, a: 0.66 },
+        marginColor: { r: 246, g: 178, b: 107, a: 0.66 },
+    };
     const HIGHLIGHT_STYLE = document.createElement("style");
+    const DATA_CHUNK_SIZE = 768 * 1024; // bytes or characters per base64 chunk passed to sendData handlers
+    const STATE_DATA_CHANNEL = "markdownNavigator.setState"; // DevToolsDebuggerJsBridge.STATE_DATA_CHANNEL
 
     // just so we get a color chooser in IDEA, uncomment
     HIGHLIGHT_STYLE.textContent = `.${HIGHLIGHT} {
@@ -102,17 +112,269 @@ markdownNavigator = (function () {
     let __markdownNavigator,
         __tmp = {
             __state: {},
+            __changed: {}, // keys set by scripts before the JsBridge, passed to it on connection
             __onJsBridge: [],
-            __onJsConsole: [],
+            __backlog: [], // [method, ...args] of bridge calls made before connection, passed in one replayBacklog call
             __consoleSetJsBridge: console.setJsBridge, // functions to use before JSBridge is established
             onJsBridge: () => {
             },
-            onJsConsole: () => {
-            },
-        },
-        __consoleLog = (type, args) => {
         },
-        __lastHighlight = null;
+        __lastHighlight = null,
+        __lastHighlightIsOverlay = false,
+        __overlay = null,
+        __nodeRegistry = new Map(), // debugger nodeId to WeakRef of node, ids are numbers so a WeakMap cannot be keyed by them
+        __nodeIds = new WeakMap(), // node to its registered nodeId, so a node registered again does not leave its old id behind
+        __nodeCleanup = typeof FinalizationRegistry === "function" ? new FinalizationRegistry(nodeId => {
+            if (registeredNode(nodeId) === undefined) __nodeRegistry.delete(nodeId);
+        }) : null,
+        __stateSnapshot = null, // frozen state injected at connect, getState is served from it without calling the bridge
+        __stateJson = {}, // JSON of snapshot values, unchanged setState values are not sent to the bridge
+        __dataStreamId = 0;
+
+    function bytesToBase64(bytes) {
+        let binary = "";
+        for (let i = 0; i < bytes.length; i += 8192) {
+            binary += String.fromCharCode.apply(null, bytes.subarray(i, Math.min(i + 8192, bytes.length)));
+        }
+        return btoa(binary);
+    }
+
+    // typed arrays and large JSON are passed in base64 chunks so Java does not get the whole payload as one string
+    function sendData(jsBridge, channel, data) {
+        let bytes = null;
+        if (data instanceof ArrayBuffer) {
+            bytes = new Uint8Array(data);
+        } else if (ArrayBuffer.isView(data)) {
+            bytes = new Uint8Array(data.buffer, data.byteOffset, data.byteLength);
+        }
+
+        if (bytes !== null) {
+            let streamId = ++__dataStreamId;
+            jsBridge.dataBegin(streamId, channel, bytes.length, false);
+            for (let i = 0; i < bytes.length; i += DATA_CHUNK_SIZE) {
+                jsBridge.dataChunk(streamId, bytesToBase64(bytes.subarray(i, Math.min(i + DATA_CHUNK_SIZE, bytes.length))));
+            }
+            jsBridge.dataEnd(streamId);
+        } else {
+            sendText(jsBridge, channel, JSON.stringify(data === undefined ? null : data));
+        }
+    }
+
+    function sendText(jsBridge, channel, text) {
+        if (text.length < __unbridged.dataThreshold) {
+            jsBridge.dataJson(channel, text);
+        } else {
+            let streamId = ++__dataStreamId;
+            jsBridge.dataBegin(streamId, channel, text.length, true);
+            for (let i = 0; i < text.length;) {
+                let end = Math.min(i + DATA_CHUNK_SIZE, text.length);
+                // do not split a surrogate pair between chunks
+                if (end < text.length && (text.charCodeAt(end - 1) & 0xFC00) === 0xD800) end--;
+                jsBridge.dataChunk(streamId, btoa(unescape(encodeURIComponent(text.substring(i, end)))));
+                i = end;
+            }
+            jsBridge.dataEnd(streamId);
+        }
+    }
+
+    // state JSON of at least dataThreshold characters goes through the data channel as name length:name followed by JSON
+    function setStateJson(jsBridge, name, json) {
+        if (json === null || json.length < __unbridged.dataThreshold) {
+            jsBridge.setStateJson(name, json);
+        } else {
+            sendText(jsBridge, STATE_DATA_CHANNEL, name.length + ":" + name + json);
+        }
+    }
+
+    function deepFreeze(value) {
+        if (value !== null && typeof value === "object" && !Object.isFrozen(value)) {
+            Object.freeze(value);
+            for (const key of Object.keys(value)) {
+                deepFreeze(value[key]);
+            }
+        }
+        return value;
+    }
+
+    // new frozen snapshot with name changed, returns false if value is the same
+    function updateSnapshot(name, json) {
+        if (__stateJson[name] === json) return false;
+
+        let snapshot = Object.assign({}, __stateSnapshot);
+        if (json === undefined) {
+            delete snapshot[name];
+            delete __stateJson[name];
+        } else {
+            snapshot[name] = deepFreeze(JSON.parse(json));
+            __stateJson[name] = json;
+        }
+        __stateSnapshot = Object.freeze(snapshot);
+        return true;
+    }
+
+    function getChildNode(node, nodeOrdinal) {
+        let iMax = node.childNodes.length;
+        let index = 0;
+        for (let i = 0; i < iMax; i++) {
+            let child = node.childNodes.item(i);
+            if (child.nodeName.startsWith("#") && (child.nodeName !== "#text" || child.textContent.trim() === "")) {
+                // skip non-element nodes or empty text
+                continue;
+            }
+
+            if (index === nodeOrdinal) {
+                return child;
+            }
+            index++;
+        }
+        return null;
+    }
+
+    function registerNode(nodeId, node) {
+        let oldId = __nodeIds.get(node);
+        if (oldId !== undefined && oldId !== nodeId) __nodeRegistry.delete(oldId);
+        __nodeIds.set(node, nodeId);
+
+        if (typeof WeakRef === "function") {
+            __nodeRegistry.set(nodeId, new WeakRef(node));
+            if (__nodeCleanup !== null) __nodeCleanup.register(node, nodeId);
+        } else {
+            // without weak references removed nodes are released when the proxy unregisters them
+            __nodeRegistry.set(nodeId, node);
+        }
+    }
+
+    // registered node still in the document or undefined
+    function registeredNode(nodeId) {
+        let entry = __nodeRegistry.get(nodeId);
+        let node = entry !== undefined && typeof WeakRef === "function" && entry instanceof WeakRef ? entry.deref() : entry;
+        if (node !== undefined && node !== document && !document.documentElement.contains(node)) {
+            __nodeRegistry.delete(nodeId);
+            node = undefined;
+        }
+        return node;
+    }
+
+    // need to find the node, path is ordinal in parent, in reverse order, all the way to document, first index to be ignored
+    function resolveNode(nodeOrdinals, allowText) {
+        let iMax = nodeOrdinals.length;
+        let node = document;
+        for (let i = iMax; i-- > 1;) {
+            let nodeOrdinal = nodeOrdinals[i];
+            let child = getChildNode(node, nodeOrdinal);
+
+            if (child === null) {
+                if (i === 1) {
+                    // if last one take the parent
+                    break;
+                }
+
+                console.error("Node ordinal not in children", nodeOrdinal, node, nodeOrdinals);
+                return null;
+            }
+
+            if (child.nodeName.startsWith("#")) {
+                // only the overlay can highlight non-element nodes, class highlight uses the parent
+                if (allowText) node = child;
+                break;
+            }
+
+            node = child;
+        }
+        // console.debug("Final node", node);
+        return node;
+    }
+
+    function showHighlight(node, highlightConfig) {
+        if (node !== null && node !== document) {
+            if (highlightConfig) {
+                if (!__lastHighlightIsOverlay) __unbridged.hideHighlight();
+                showOverlay(node, Object.assign({}, DEFAULT_HIGHLIGHT_CONFIG, highlightConfig));
+                __lastHighlight = node;
+                __lastHighlightIsOverlay = true;
+            } else {
+                if (node.nodeType !== Node.ELEMENT_NODE) node = node.parentNode;
+                if (node !== __lastHighlight || __lastHighlightIsOverlay) {
+                    __unbridged.hideHighlight();
+                    node.classList.add(HIGHLIGHT);
+                    __lastHighlight = node;
+                }
+            }
+        }
+    }
+
+    function rgba(color) {
+        return color ? `rgba(${color.r || 0},${color.g || 0},${color.b || 0},${color.a === undefined ? 1 : color.a})` : "transparent";
+    }
+
+    function px(value) {
+        return (parseFloat(value) || 0);
+    }
+
+    function getOverlay() {
+        if (__overlay === null) {
+            const boxStyle = "box-sizing:border-box;width:100%;height:100%;margin:0;padding:0;border-style:solid;";
+            __overlay = document.createElement("div");
+            __overlay.className = HIGHLIGHT_OVERLAY;
+            __overlay.style.cssText = "position:absolute;pointer-events:none;z-index:2147483647;display:none;" + boxStyle;
+            __overlay.innerHTML = `<div style="${boxStyle}"><div style="${boxStyle}"><div style="${boxStyle}border-width:0;"></div></div></div>` +
+                `<div style="position:absolute;left:0;white-space:nowrap;font:11px sans-serif;color:#222;background:#ffffe0;border:1px solid #999;padding:1px 4px;"></div>`;
+        }
+
+        // page content may have been replaced
+        if (__overlay.parentNode !== document.documentElement) {
+            document.documentElement.appendChild(__overlay);
+        }
+        return __overlay;
+    }
+
+    function showOverlay(node, config) {
+        let rect, margin = [0, 0, 0, 0], border = [0, 0, 0, 0], padding = [0, 0, 0, 0];
+
+        if (node.nodeType === Node.ELEMENT_NODE) {
+            const style = window.getComputedStyle(node);
+            rect = node.getBoundingClientRect();
+            margin = [px(style.marginTop), px(style.marginRight), px(style.marginBottom), px(style.marginLeft)];
+            border = [px(style.borderTopWidth), px(style.borderRightWidth), px(style.borderBottomWidth), px(style.borderLeftWidth)];
+            padding = [px(style.paddingTop), px(style.paddingRight), px(style.paddingBottom), px(style.paddingLeft)];
+        } else {
+            const range = document.createRange();
+            range.selectNodeContents(node);
+            rect = range.getBoundingClientRect();
+        }
+
+        const overlay = getOverlay();
+        const borderBox = overlay.firstChild;
+        const paddingBox = borderBox.firstChild;
+        const contentBox = paddingBox.firstChild;
+        const info = overlay.lastChild;
+        const widths = sides => sides.map(side => side + "px").join(" ");
+
+        overlay.style.left = (rect.left + window.pageXOffset - margin[3]) + "px";
+        overlay.style.top = (rect.top + window.pageYOffset - margin[0]) + "px";
+        overlay.style.width = (rect.width + margin[1] + margin[3]) + "px";
+        overlay.style.height = (rect.height + margin[0] + margin[2]) + "px";
+        overlay.style.borderWidth = widths(margin);
+        overlay.style.borderColor = rgba(config.marginColor);
+        borderBox.style.borderWidth = widths(border);
+        borderBox.style.borderColor = rgba(config.borderColor);
+        paddingBox.style.borderWidth = widths(padding);
+        paddingBox.style.borderColor = rgba(config.paddingColor);
+        contentBox.style.backgroundColor = rgba(config.contentColor);
+
+        if (config.showInfo) {
+            let text = node.nodeName.toLowerCase();
+            if (node.id) text += "#" + node.id;
+            if (node.classList && node.classList.length) text += "." + Array.prototype.join.call(node.classList, ".");
+            info.textContent = `${text} ${Math.round(rect.width * 100) / 100} \u00d7 ${Math.round(rect.height * 100) / 100}`;
+            info.style.top = rect.top > 20 ? "-20px" : "100%";
+            info.style.display = "";
+        } else {
+            info.style.display = "none";
+        }
+
+        overlay.style.display = "";
+    }
 
     delete console["setJsBridge"];
 
@@ -120,8 +382,8 @@ markdownNavigator = (function () {
         __tmp.__onJsBridge[__tmp.__onJsBridge.length] = op;
     };
 
-    __tmp.onJsConsole = op => {
-        __tmp.__onJsConsole[__tmp.__onJsConsole.length] = op;
+    __tmp.onJsConsole = (...call) => {
+        __tmp.__backlog[__tmp.__backlog.length] = call;
     };
 
     let __unbridged = {
@@ -135,6 +397,18 @@ markdownNavigator = (function () {
 
         setState: (name, state) => {
             __tmp.__state[name] = state;
+            __tmp.__changed[name] = true;
+        },
+
+        // saved state from the page, Java already has it so it is not passed back on connection
+        setStateBulk: state => {
+            if (__tmp !== null) {
+                Object.assign(__tmp.__state, state);
+            } else {
+                for (const key of Object.keys(state)) {
+                    __unbridged.updateState(key, state[key]);
+                }
+            }
         },
 
         toggleTask: function (pos) {
@@ -147,133 +421,196 @@ markdownNavigator = (function () {
             __tmp.onJsBridge(op);
         },
 
+        // JSON shorter than this is passed to sendData handlers as a single string
+        dataThreshold: 64 * 1024,
+
+        sendData: (channel, data) => {
+            __tmp.onJsBridge(() => {
+                sendData(__markdownNavigator, channel, data);
+            });
+        },
+
         // functions mimicking jsBridge until it is connected
         consoleLog: (type, args) => {
-            __tmp.onJsConsole(() => {
-                __consoleLog(type, args);
-            });
+            __tmp.onJsConsole("consoleLog", type, args);
         },
 
         println: text => {
-            __tmp.onJsConsole(() => {
-                console.println(text);
-            });
+            __tmp.onJsConsole("println", text);
         },
 
         print: text => {
-            __tmp.onJsConsole(() => {
-                console.print(text);
-            });
+            __tmp.onJsConsole("print", text);
         },
 
-        highlightNode: (nodeOrdinals) => {
-            function getChildNode(node, nodeOrdinal) {
-                let iMax = node.childNodes.length;
-                let index = 0;
-                for (let i = 0; i < iMax; i++) {
-                    let child = node.childNodes.item(i);
-                    if (child.nodeName.startsWith("#") && (child.nodeName !== "#text" || child.textContent.trim() === "")) {
-                        // skip non-element nodes or empty text
-                        continue;
-                    }
-
-                    if (index === nodeOrdinal) {
-                        return child;
-                    }
-                    index++;
-                }
-                return null;
+        highlightNode: (nodeOrdinals, highlightConfig) => {
+            try {
+                showHighlight(resolveNode(nodeOrdinals, !!highlightConfig), highlightConfig);
+            } catch (e) {
+                console.error(e)
             }
+        },
 
-            // need to find the node, path is ordinal in parent, in reverse order, all the way to document, first index to be ignored
-            let iMax = nodeOrdinals.length;
-            let node = document;
+        // nodeId registry lookup, falls back on the ordinal path when the node is not registered or was detached
+        highlightNodeId: (nodeId, nodeOrdinals, highlightConfig) => {
             try {
-                for (let i = iMax; i-- > 1;) {
-                    let nodeOrdinal = nodeOrdinals[i];
-                    let child = getChildNode(node, nodeOrdinal);
-
-                    if (child === null) {
-                        if (i === 1) {
-                            // if last one take the parent
-                            break;
-                        }
+                let node = registeredNode(nodeId);
 
-                        console.error("Node ordinal not in children", nodeOrdinal, node, nodeOrdinals);
-                        node = null;
-                        break;
+                if (node === undefined && nodeOrdinals) {
+                    // register what the path resolves to, text nodes included, highlight picks what it can use
+                    node = resolveNode(nodeOrdinals, true);
+                    if (node !== null && node !== document) {
+                        registerNode(nodeId, node);
                     }
+                }
 
-                    if (child.nodeName.startsWith("#")) {
-                        // FIX: when overlays are implemented to handle non-element nodes, highlight the child
-                        break;
-                    }
+                if (node === undefined || node === null) {
+                    __unbridged.hideHighlight();
+                } else {
+                    showHighlight(node, highlightConfig);
+                }
+            } catch (e) {
+                console.error(e)
+            }
+        },
+
+        clearNodeIds: () => {
+            __nodeRegistry.clear();
+            __nodeIds = new WeakMap();
+        },
 
-                    node = child;
+        // called by the proxy as its DOM mirror receives nodes, nodeIds are parentId, ordinal, nodeId triples
+        // with parents before their children, parentId 0 for the document node, removedIds are dropped
+        registerNodeIds: (nodeIds, removedIds) => {
+            try {
+                for (let i = 0; i < removedIds.length; i++) {
+                    __nodeRegistry.delete(removedIds[i]);
                 }
-                // console.debug("Final node", node);
-                if (node !== null && node !== __lastHighlight) {
-                    __unbridged.hideHighlight();
-                    node.classList.add(HIGHLIGHT);
-                    __lastHighlight = node;
+
+                for (let i = 0; i + 2 < nodeIds.length; i += 3) {
+                    if (nodeIds[i] === 0) {
+                        registerNode(nodeIds[i + 2], document);
+                    } else {
+                        let parent = registeredNode(nodeIds[i]);
+                        let child = parent === undefined ? null : getChildNode(parent, nodeIds[i + 1]);
+                        if (child !== null) registerNode(nodeIds[i + 2], child);
+                    }
                 }
             } catch (e) {
                 console.error(e)
             }
         },
 
+        // called before setJsBridge to serve getState from the given state
+        setStateSnapshot: state => {
+            __stateSnapshot = deepFreeze(state || {});
+            __stateJson = {};
+            for (const key of Object.keys(__stateSnapshot)) {
+                __stateJson[key] = JSON.stringify(__stateSnapshot[key]);
+            }
+        },
+
+        // state change made on the Java side
+        updateState: (name, state) => {
+            if (__stateSnapshot !== null) {
+                updateSnapshot(name, state === null || state === undefined ? undefined : JSON.stringify(state));
+            }
+        },
+
         hideHighlight: () => {
             if (__lastHighlight) {
-                __lastHighlight.classList.remove(HIGHLIGHT);
-                if (__lastHighlight.classList.length === 0) {
-                    __lastHighlight.removeAttribute("class");
+                if (__lastHighlightIsOverlay) {
+                    if (__overlay !== null) __overlay.style.display = "none";
+                } else {
+                    __lastHighlight.classList.remove(HIGHLIGHT);
+                    if (__lastHighlight.classList.length === 0) {
+                        __lastHighlight.removeAttribute("class");
+                    }
                 }
                 __lastHighlight = null;
+                __lastHighlightIsOverlay = false;
+            }
+        },
+
+        // single entry connection from Java, state is JSON text of the state snapshot or null
+        // exceptions stay here, Java takes one from the call as a helper without this function
+        connectJsBridge: (argsAccessor, jsBridge, state) => {
+            try {
+                window.__MarkdownNavigatorArgs = argsAccessor;
+                if (state !== null && state !== undefined) {
+                    __unbridged.setStateSnapshot(JSON.parse(state));
+                }
+                __unbridged.setJsBridge(jsBridge);
+            } catch (e) {
+                console.error(e)
             }
         },
 
         setJsBridge: jsBridge => {
             // map to real JsBridge
-            __consoleLog = __tmp.__consoleSetJsBridge(jsBridge);
+            __tmp.__consoleSetJsBridge(jsBridge);
             __markdownNavigator = jsBridge;
             debugBreak = jsBridge.debugBreak;
 
             // we don't need these anymore
             delete __unbridged["consoleLog"];
             delete __unbridged["setJsBridge"];
+            delete __unbridged["connectJsBridge"];
+            delete window["markdownNavigatorConnect"];
             delete __unbridged["println"];
             delete __unbridged["print"];
 
             // these now point directly to the jsBridge implementations or invocations
             __unbridged.setEventHandledBy = (name) => jsBridge.setEventHandledBy(name);
-            __unbridged.getState = (name) => jsBridge.getState(name);
-            __unbridged.setState = (name, state) => jsBridge.setState(name, state);
+            if (__stateSnapshot !== null) {
+                __unbridged.getState = (name) => __stateSnapshot.hasOwnProperty(name) ? __stateSnapshot[name] : null;
+                __unbridged.setState = (name, state) => {
+                    // JSON text of the snapshot is passed as is, an object would be stringified again by Java
+                    const json = state === null || state === undefined ? undefined : JSON.stringify(state);
+                    if (updateSnapshot(name, json)) {
+                        setStateJson(jsBridge, name, json === undefined ? null : json);
+                    }
+                };
+            } else {
+                __unbridged.getState = (name) => jsBridge.getState(name);
+                // stringified here, passing an object would make Java call back into JS to do it
+                __unbridged.setState = (name, state) => setStateJson(jsBridge, name, state === null || state === undefined ? null : JSON.stringify(state));
+            }
             __unbridged.toggleTask = position => jsBridge.toggleTask(position);
+            __unbridged.sendData = (channel, data) => sendData(jsBridge, channel, data);
             __unbridged.onJsBridge = op => op();
 
             document.querySelector("head").appendChild(HIGHLIGHT_STYLE);
             console.debug(`Created ${HIGHLIGHT} style element`, HIGHLIGHT_STYLE);
 
-            // dump any accumulated console/print before bridge connected
-            for (const __onJsConsoleItem of __tmp.__onJsConsole) {
+            // state changes requested before jsBridge was setup go after accumulated console/print
+            let largeState = [];
+            for (let f in __tmp.__changed) {
+                if (__tmp.__changed.hasOwnProperty(f)) {
+                    let state = __tmp.__state[f];
+                    let json = state === null || state === undefined ? undefined : JSON.stringify(state);
+                    if (__stateSnapshot === null || updateSnapshot(f, json)) {
+                        if (json !== undefined && json.length >= __unbridged.dataThreshold) {
+                            largeState[largeState.length] = [f, json];
+                        } else {
+                            __tmp.onJsConsole("setStateJson", f, json === undefined ? null : json);
+                        }
+                    }
+                }
+            }
+
+            // pass backlog in one call instead of one call per item
+            if (__tmp.__backlog.length) {
                 try {
-                    __onJsConsoleItem();
+                    jsBridge.replayBacklog(__tmp.__backlog);
                 } catch (e) {
-                    console.println("onJsConsole exception: calling " + __onJsConsoleItem);
-                    console.println("onJsConsole exception: " + e);
+                    console.println("replayBacklog exception: " + e);
                 }
             }
 
-            // save any state changes requested before jsBridge was setup
-            console.groupCollapsed("cachedState");
-            for (let f in __tmp.__state) {
-                if (__tmp.__state.hasOwnProperty(f)) {
-                    console.log(f, __tmp.__state[f]);
-                    // console.println(name + " = " + JSON.stringify( __state[name],null,2));
-                    __markdownNavigator.setState(f, __tmp.__state[f]);
-                }
+            for (const [name, json] of largeState) {
+                setStateJson(jsBridge, name, json);
             }
-            console.groupEnd();
 
             // run any ops needed on connection
             for (const __onJsBridgeItem of __tmp.__onJsBridge) {
@@ -294,6 +631,9 @@ markdownNavigator = (function () {
         },
     };
 
+    // Java calls this on the window it gets without running a script, connecting with one call
+    window.markdownNavigatorConnect = __unbridged.connectJsBridge;
+
     return __unbridged;
 })();
 
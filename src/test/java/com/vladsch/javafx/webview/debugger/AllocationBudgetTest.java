@@ -0,0 +1,160 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import com.vladsch.boxed.json.BoxedJsValue;
+import com.vladsch.boxed.json.BoxedJson;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Allocation budgets for the message hot path, run by surefire with the library tests
+ * <p>
+ * Measures bytes allocated on the calling thread per message through {@link DevToolsDebugProxy#call(String)},
+ * {@link DevToolsDebugProxy#sendMessage(String)}, console forwarding and {@link JfxWebSocketServer#send(JfxDebuggerConnector, String)}
+ * using the {@link com.sun.management.ThreadMXBean} allocation counter and fails when a budget is exceeded.
+ * <p>
+ * Budgets are in bytes per message with a small margin over the current allocation and can be changed
+ * with {@code -Dbudget.<name>=bytes}. Lower them when an allocation cut lands so it stays in place.
+ */
+public class AllocationBudgetTest {
+    static final int WARMUP = 20000;
+    static final int ITERATIONS = 20000;
+    static final int DOM_PARENT_ID = 15;
+    static final int DOM_INSERTED_ID = 100000;
+
+    static final long PASSTHROUGH_EVENT_BUDGET = 3 * 1024L;
+    static final long NETWORK_EVENT_BUDGET = 1536L;
+    static final long REMAPPED_COMMAND_BUDGET = 3 * 1024L;
+    static final long CONSOLE_FORWARD_BUDGET = 12 * 1024L;
+    static final long DOM_MUTATION_EVENT_BUDGET = 6 * 1024L;
+    static final long WEB_SOCKET_SEND_BUDGET = 768L;
+
+    interface Scenario {
+        void run(int iteration) throws Exception;
+    }
+
+    static final com.sun.management.ThreadMXBean ourThreadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @BeforeClass
+    public static void enableAllocationCounter() {
+        assumeTrue("Thread allocated memory not supported by this JVM", ourThreadMXBean.isThreadAllocatedMemorySupported());
+        ourThreadMXBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    static long measure(Scenario scenario) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            scenario.run(i);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = ourThreadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            scenario.run(i);
+        }
+        long after = ourThreadMXBean.getThreadAllocatedBytes(threadId);
+        return (after - before) / ITERATIONS;
+    }
+
+    static void assertBudget(String name, long defaultBudget, Scenario scenario) throws Exception {
+        long budget = Long.getLong("budget." + name, defaultBudget);
+        long bytes = measure(scenario);
+        System.out.println(String.format("%-24s %8d bytes/message, budget %8d", name, bytes, budget));
+        assertTrue(String.format("%s allocated %d bytes/message, budget %d", name, bytes, budget), bytes <= budget);
+    }
+
+    static DevToolsDebugProxy newProxy() {
+        DevToolsDebugProxy proxy = new DevToolsDebugProxy(new BenchmarkDebugger(), new BenchmarkDebuggerAccess());
+        proxy.setMessageCallback(data -> null);
+        proxy.setEnabled(true);
+        proxy.call(CdpPayloads.CONTEXT_CREATED);
+        return proxy;
+    }
+
+    @Test
+    public void passthroughEvent() throws Exception {
+        DevToolsDebugProxy proxy = newProxy();
+        assertBudget("passthroughEvent", PASSTHROUGH_EVENT_BUDGET, i -> proxy.call(CdpPayloads.SCRIPT_PARSED));
+    }
+
+    @Test
+    public void networkEvent() throws Exception {
+        DevToolsDebugProxy proxy = newProxy();
+        assertBudget("networkEvent", NETWORK_EVENT_BUDGET, i -> proxy.call(CdpPayloads.LOADING_FINISHED));
+    }
+
+    @Test
+    public void remappedCommand() throws Exception {
+        DevToolsDebugProxy proxy = newProxy();
+        String[] commands = new String[CdpPayloads.SMALL_COMMANDS.length];
+        for (int i = 0; i < commands.length; i++) {
+            // ids well above the proxy's so every command is remapped
+            commands[i] = String.format(CdpPayloads.SMALL_COMMANDS[i], 1000000 + i);
+        }
+        assertBudget("remappedCommand", REMAPPED_COMMAND_BUDGET, i -> proxy.sendMessage(commands[i % commands.length]));
+    }
+
+    @Test
+    public void consoleForward() throws Exception {
+        DevToolsDebugProxy proxy = newProxy();
+        String pausedParam = CdpPayloads.debuggerPaused(4, 6);
+        BoxedJsValue argParam = BoxedJson.boxedFrom(CdpPayloads.CONSOLE_ARG_PARAM);
+        BoxedJsValue stringParam = BoxedJson.boxedFrom(CdpPayloads.CONSOLE_STRING_PARAM);
+        assertBudget("consoleForward", CONSOLE_FORWARD_BUDGET, i -> {
+            JfxConsoleApiArgs consoleArgs = new JfxConsoleApiArgs(new Object[2], "log", System.nanoTime());
+            consoleArgs.setPausedParam(pausedParam);
+            consoleArgs.setParamJson(0, stringParam);
+            consoleArgs.setParamJson(1, argParam);
+            proxy.sendConsoleAPI(consoleArgs);
+        });
+    }
+
+    @Test
+    public void domMutationEvent() throws Exception {
+        // mirror a tree, then alternate inserting and removing a leaf so the mirror stays the same size
+        DevToolsDebugProxy proxy = newProxy();
+        proxy.call(CdpPayloads.domSetChildNodes(DOM_PARENT_ID, 4, 4));
+        String inserted = CdpPayloads.domChildNodeInserted(DOM_PARENT_ID, DOM_PARENT_ID + 1, DOM_INSERTED_ID);
+        String removed = CdpPayloads.domChildNodeRemoved(DOM_PARENT_ID, DOM_INSERTED_ID);
+        assertBudget("domMutationEvent", DOM_MUTATION_EVENT_BUDGET, i -> proxy.call(i % 2 == 0 ? inserted : removed));
+    }
+
+    @Test
+    public void webSocketSend() throws Exception {
+        LocalWebSocketSession session = new LocalWebSocketSession();
+        session.open();
+        try {
+            assertBudget("webSocketSend", WEB_SOCKET_SEND_BUDGET, i -> session.send(CdpPayloads.LOADING_FINISHED));
+        } finally {
+            session.close();
+        }
+    }
+}
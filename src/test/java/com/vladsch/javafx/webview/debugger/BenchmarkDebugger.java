@@ -0,0 +1,92 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import com.sun.javafx.scene.web.Debugger;
+import javafx.util.Callback;
+
+/**
+ * Stand-in for WebView debugger, answers every command with an empty result, synchronously
+ */
+public class BenchmarkDebugger implements Debugger {
+    private Callback<String, Void> myCallback;
+    private boolean myEnabled = true;
+    private boolean myRespond = true;
+    private int mySentCount;
+
+    public int getSentCount() {
+        return mySentCount;
+    }
+
+    public void setRespond(final boolean respond) {
+        myRespond = respond;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return myEnabled;
+    }
+
+    @Override
+    public void setEnabled(final boolean enabled) {
+        myEnabled = enabled;
+    }
+
+    @Override
+    public void sendMessage(final String message) {
+        mySentCount++;
+        if (myRespond && myCallback != null) {
+            int id = messageId(message);
+            if (id > 0) {
+                myCallback.call("{\"result\":{},\"id\":" + id + "}");
+            }
+        }
+    }
+
+    @Override
+    public Callback<String, Void> getMessageCallback() {
+        return myCallback;
+    }
+
+    @Override
+    public void setMessageCallback(final Callback<String, Void> callback) {
+        myCallback = callback;
+    }
+
+    static int messageId(String message) {
+        int pos = message.indexOf("\"id\":");
+        if (pos < 0) return 0;
+        pos += 5;
+        int iMax = message.length();
+        int id = 0;
+        while (pos < iMax) {
+            char c = message.charAt(pos++);
+            if (c < '0' || c > '9') break;
+            id = id * 10 + (c - '0');
+        }
+        return id;
+    }
+}
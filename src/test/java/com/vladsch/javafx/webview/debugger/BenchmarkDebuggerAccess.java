@@ -0,0 +1,69 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+/**
+ * WebView side access without a WebEngine, eval results are not available
+ */
+public class BenchmarkDebuggerAccess implements JfxDebuggerAccess {
+    Object myArg;
+
+    @Override
+    public String setArg(final Object arg) {
+        myArg = arg;
+        return "window.__MarkdownNavigatorArgs.getConsoleArg()";
+    }
+
+    @Override
+    public void clearArg() {
+        myArg = null;
+    }
+
+    @Override
+    public Object eval(final String script) {
+        return null;
+    }
+
+    @Override
+    public void pageReloadStarted() {
+
+    }
+
+    @Override
+    public String jsBridgeHelperScript() {
+        return "";
+    }
+
+    @Override
+    public void onConnectionOpen() {
+
+    }
+
+    @Override
+    public void onConnectionClosed() {
+
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * CDP payloads for benchmarks, shaped after messages captured from WebView and Chrome Dev Tools sessions
+ */
+public class CdpPayloads {
+    // Dev Tools -> proxy commands
+    public static final String[] SMALL_COMMANDS = new String[] {
+            "{\"id\":%d,\"method\":\"Debugger.setBreakpointByUrl\",\"params\":{\"lineNumber\":16,\"url\":\"file:///Users/vlad/src/sites/public/mn-resources/admonition.js\",\"columnNumber\":0,\"condition\":\"\"}}",
+            "{\"id\":%d,\"method\":\"Runtime.getProperties\",\"params\":{\"objectId\":\"{\\\"injectedScriptId\\\":3,\\\"id\\\":174}\",\"ownProperties\":true,\"accessorPropertiesOnly\":false,\"generatePreview\":true}}",
+            "{\"id\":%d,\"method\":\"DOM.requestChildNodes\",\"params\":{\"nodeId\":15}}",
+            "{\"id\":%d,\"method\":\"Debugger.stepOver\"}",
+            "{\"id\":%d,\"method\":\"CSS.getMatchedStylesForNode\",\"params\":{\"nodeId\":27}}",
+    };
+
+    // WebView -> proxy events passed through without changes
+    public static final String SCRIPT_PARSED = "{\"method\":\"Debugger.scriptParsed\",\"params\":{\"scriptId\":\"183\",\"url\":\"file:///Users/vlad/src/sites/public/mn-resources/admonition.js\",\"startLine\":0,\"startColumn\":0,\"endLine\":63,\"endColumn\":0,\"isContentScript\":false,\"sourceMapURL\":\"\"}}";
+    public static final String LOADING_FINISHED = "{\"method\":\"Network.loadingFinished\",\"params\":{\"requestId\":\"0.100\",\"timestamp\":0.06045897198055172}}";
+    public static final String CONTEXT_CREATED = "{\"method\":\"Runtime.executionContextCreated\",\"params\":{\"context\":{\"id\":6,\"isPageContext\":true,\"name\":\"\",\"frameId\":\"0.1\"}}}";
+
+    public static final String CONSOLE_ARG_PARAM = "{\"type\":\"object\",\"objectId\":\"{\\\"injectedScriptId\\\":1,\\\"id\\\":5}\",\"className\":\"Object\",\"description\":\"Object\",\"preview\":{\"type\":\"object\",\"description\":\"Object\",\"lossless\":true,\"properties\":[{\"name\":\"x\",\"type\":\"number\",\"value\":\"0\"},{\"name\":\"y\",\"type\":\"number\",\"value\":\"79.27999999999997\"}]}}";
+    public static final String CONSOLE_STRING_PARAM = "{\"type\":\"string\",\"value\":\"Log text\"}";
+
+    /**
+     * Debugger.paused event with scope chains as WebView sends them
+     *
+     * @param callFrames number of call frames
+     * @param scopes     scope chain length per frame, last one is global
+     *
+     * @return event json
+     */
+    @NotNull
+    public static String debuggerPaused(int callFrames, int scopes) {
+        StringBuilder sb = new StringBuilder();
+        int objectId = 174;
+        sb.append("{\"method\":\"Debugger.paused\",\"params\":{\"callFrames\":[");
+        for (int f = 0; f < callFrames; f++) {
+            if (f > 0) sb.append(',');
+            sb.append("{\"callFrameId\":\"{\\\"ordinal\\\":").append(f).append(",\\\"injectedScriptId\\\":3}\",\"functionName\":\"consoleLog\",")
+                    .append("\"location\":{\"scriptId\":\"").append(81 + f).append("\",\"lineNumber\":").append(10 + f).append(",\"columnNumber\":16},\"scopeChain\":[");
+            for (int s = 0; s < scopes; s++) {
+                if (s > 0) sb.append(',');
+                boolean global = s == scopes - 1;
+                sb.append("{\"object\":{\"type\":\"object\",\"objectId\":\"{\\\"injectedScriptId\\\":3,\\\"id\\\":").append(objectId++).append("}\",")
+                        .append(global ? "\"className\":\"Window\",\"description\":\"Window\"},\"type\":\"global\"}"
+                                : s == 0 ? "\"className\":\"JSLexicalEnvironment\",\"description\":\"JSLexicalEnvironment\"},\"type\":\"local\"}"
+                                : "\"className\":\"JSLexicalEnvironment\",\"description\":\"JSLexicalEnvironment\"},\"type\":\"closure\"}");
+            }
+            sb.append("],\"this\":{\"type\":\"object\",\"objectId\":\"{\\\"injectedScriptId\\\":3,\\\"id\\\":").append(objectId++)
+                    .append("}\",\"subtype\":\"node\",\"className\":\"HTMLDivElement\",\"description\":\"div.adm-block.adm-example.adm-collapsed\"}}");
+        }
+        sb.append("],\"reason\":\"other\"}}");
+        return sb.toString();
+    }
+
+    /**
+     * DOM.setChildNodes event for a generated subtree
+     *
+     * @param parentId  node id of parent, node ids of the subtree are allocated after it
+     * @param breadth   children per element
+     * @param depth     depth of subtree
+     *
+     * @return event json
+     */
+    @NotNull
+    public static String domSetChildNodes(int parentId, int breadth, int depth) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"method\":\"DOM.setChildNodes\",\"params\":{\"parentId\":").append(parentId).append(",\"nodes\":");
+        appendNodes(sb, new int[] { parentId + 1 }, breadth, depth);
+        sb.append("}}");
+        return sb.toString();
+    }
+
+    /**
+     * DOM.childNodeInserted event for a leaf element
+     *
+     * @param parentId       parent node id
+     * @param previousNodeId previous sibling node id, 0 if first
+     * @param nodeId         inserted node id
+     *
+     * @return event json
+     */
+    @NotNull
+    public static String domChildNodeInserted(int parentId, int previousNodeId, int nodeId) {
+        return "{\"method\":\"DOM.childNodeInserted\",\"params\":{\"parentNodeId\":" + parentId + ",\"previousNodeId\":" + previousNodeId
+                + ",\"node\":{\"nodeId\":" + nodeId + ",\"nodeType\":1,\"nodeName\":\"SPAN\",\"localName\":\"span\",\"nodeValue\":\"\",\"childNodeCount\":0,\"attributes\":[\"class\",\"inserted\"]}}}";
+    }
+
+    /**
+     * DOM.childNodeRemoved event
+     *
+     * @param parentId parent node id
+     * @param nodeId   removed node id
+     *
+     * @return event json
+     */
+    @NotNull
+    public static String domChildNodeRemoved(int parentId, int nodeId) {
+        return "{\"method\":\"DOM.childNodeRemoved\",\"params\":{\"parentNodeId\":" + parentId + ",\"nodeId\":" + nodeId + "}}";
+    }
+
+    /**
+     * Id of the last node generated by {@link #domSetChildNodes(int, int, int)}, it is the deepest one
+     *
+     * @param parentId parent id
+     * @param breadth  children per element
+     * @param depth    depth of subtree
+     *
+     * @return node id
+     */
+    public static int domLastNodeId(int parentId, int breadth, int depth) {
+        int count = 0;
+        int level = 1;
+        for (int d = 0; d < depth; d++) {
+            level *= breadth;
+            count += level;
+        }
+        return parentId + count;
+    }
+
+    private static void appendNodes(StringBuilder sb, int[] nextId, int breadth, int depth) {
+        sb.append('[');
+        for (int i = 0; i < breadth; i++) {
+            if (i > 0) sb.append(',');
+            int nodeId = nextId[0]++;
+            sb.append("{\"nodeId\":").append(nodeId).append(",\"nodeType\":1,\"nodeName\":\"DIV\",\"localName\":\"div\",\"nodeValue\":\"\",\"childNodeCount\":")
+                    .append(depth > 1 ? breadth : 0)
+                    .append(",\"attributes\":[\"class\",\"adm-block adm-example\"]");
+            if (depth > 1) {
+                sb.append(",\"children\":");
+                appendNodes(sb, nextId, breadth, depth - 1);
+            }
+            sb.append('}');
+        }
+        sb.append(']');
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class JfxDebuggerMetricsTest {
+    private static final String COMMAND = "{\"id\":42,\"method\":\"Runtime.getProperties\",\"params\":{\"objectId\":\"{\\\"injectedScriptId\\\":2,\\\"id\\\":7}\",\"ownProperties\":true}}";
+    private static final String EVENT = "{\"method\":\"DOM.attributeModified\",\"params\":{\"nodeId\":12,\"name\":\"method\",\"value\":\"post\"}}";
+    private static final String RESULT = "{\"result\":{\"result\":[{\"name\":\"method\",\"value\":{\"type\":\"string\",\"value\":\"Runtime.evaluate\"}},{\"name\":\"id\",\"value\":{\"type\":\"number\",\"value\":3}}]},\"id\":42}";
+
+    @Test
+    public void test_messageMethodCommand() {
+        assertEquals("Runtime.getProperties", JfxDebuggerMetrics.messageMethod(COMMAND));
+    }
+
+    @Test
+    public void test_messageMethodEvent() {
+        assertEquals("DOM.attributeModified", JfxDebuggerMetrics.messageMethod(EVENT));
+    }
+
+    @Test
+    public void test_messageMethodResult() {
+        assertNull(JfxDebuggerMetrics.messageMethod(RESULT));
+        assertNull(JfxDebuggerMetrics.messageMethod("{\"result\":{\"method\":\"Page.reload\"},\"id\":3}"));
+        assertNull(JfxDebuggerMetrics.messageMethod("{\"error\":{\"code\":-32000,\"message\":\"\\\"method\\\": not found\"},\"id\":4}"));
+    }
+
+    @Test
+    public void test_messageMethodValueNotKey() {
+        assertEquals("Debugger.paused", JfxDebuggerMetrics.messageMethod("{\"sessionId\":\"method\",\"method\":\"Debugger.paused\",\"params\":{}}"));
+        assertEquals("Debugger.resumed", JfxDebuggerMetrics.messageMethod("{ \"method\" : \"Debugger.resumed\" }"));
+    }
+
+    @Test
+    public void test_messageMethodNone() {
+        assertNull(JfxDebuggerMetrics.messageMethod(""));
+        assertNull(JfxDebuggerMetrics.messageMethod("{}"));
+        assertNull(JfxDebuggerMetrics.messageMethod("{\"id\":1}"));
+    }
+
+    @Test
+    public void test_messageId() {
+        assertEquals(42, JfxDebuggerMetrics.messageId(COMMAND, false));
+        assertEquals(42, JfxDebuggerMetrics.messageId(RESULT, true));
+        assertEquals(5, JfxDebuggerMetrics.messageId("{\"result\":{},\"id\": 5}", true));
+        assertEquals(0, JfxDebuggerMetrics.messageId(EVENT, true));
+        assertEquals(0, JfxDebuggerMetrics.messageId("{\"id\":\"x\"}", false));
+    }
+
+    @Test
+    public void test_resultLatencyMatchesCommand() {
+        JfxDebuggerMetrics metrics = new JfxDebuggerMetrics();
+        metrics.commandSent(COMMAND, 1000);
+        metrics.eventHandled(RESULT, 5000, 6000);
+
+        JfxDebuggerMetrics.MethodStats commandStats = metrics.getCommandStats().get("Runtime.getProperties");
+        assertEquals(1, commandStats.getLatency().getCount());
+        assertEquals(4000, commandStats.getLatency().getMaxNanos());
+
+        assertEquals(1, metrics.getEventStats().get(JfxDebuggerMetrics.RESULT_METHOD).getCount());
+        assertNull(metrics.getEventStats().get("Runtime.evaluate"));
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class JfxLatencyHistogramTest {
+    @Test
+    public void test_empty() {
+        JfxLatencyHistogram histogram = new JfxLatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMeanNanos());
+        assertEquals(0, histogram.getPercentileNanos(50));
+        assertEquals(0, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void test_zeroAndNegative() {
+        JfxLatencyHistogram histogram = new JfxLatencyHistogram();
+        histogram.record(0);
+        histogram.record(-5);
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.getMaxNanos());
+        assertEquals(0, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void test_percentileIsBucketUpperBound() {
+        JfxLatencyHistogram histogram = new JfxLatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(5050, histogram.getTotalNanos());
+        assertEquals(50, histogram.getMeanNanos());
+        assertEquals(1, histogram.getPercentileNanos(1));
+        assertEquals(3, histogram.getPercentileNanos(3));
+        assertEquals(63, histogram.getPercentileNanos(50));
+        assertEquals(63, histogram.getPercentileNanos(63));
+        // top bucket is capped by the max
+        assertEquals(100, histogram.getPercentileNanos(64));
+        assertEquals(100, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void test_tail() {
+        JfxLatencyHistogram histogram = new JfxLatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(1000);
+        }
+        histogram.record(1_000_000);
+
+        assertEquals(1023, histogram.getPercentileNanos(50));
+        assertEquals(1023, histogram.getPercentileNanos(99));
+        assertEquals(1_000_000, histogram.getPercentileNanos(99.5));
+        assertEquals(1_000_000, histogram.getMaxNanos());
+    }
+
+    @Test
+    public void test_largeValue() {
+        JfxLatencyHistogram histogram = new JfxLatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void test_reset() {
+        JfxLatencyHistogram histogram = new JfxLatencyHistogram();
+        histogram.record(1000);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxNanos());
+        assertEquals(0, histogram.getPercentileNanos(100));
+
+        histogram.record(10);
+        assertEquals(10, histogram.getPercentileNanos(100));
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import com.vladsch.boxed.json.BoxedJsObject;
+import com.vladsch.boxed.json.BoxedJson;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JfxMappedStateStoreTest {
+    private File myFile;
+    private JfxMappedStateStore myStore;
+
+    @Before
+    public void setUp() throws IOException {
+        myFile = File.createTempFile("jfx-state", ".jsts");
+        assertTrue(myFile.delete());
+        myStore = new JfxMappedStateStore(myFile);
+    }
+
+    @After
+    public void tearDown() {
+        myStore.close();
+        myFile.delete();
+        new File(myFile.getPath() + ".compact").delete();
+    }
+
+    private void reopen() throws IOException {
+        myStore.close();
+        myStore = new JfxMappedStateStore(myFile);
+    }
+
+    private void setState(String namespace, String json) {
+        myStore.getProvider(namespace).setState(BoxedJson.boxedFrom(json));
+    }
+
+    private BoxedJsObject getState(String namespace) {
+        return myStore.getProvider(namespace).getState();
+    }
+
+    private static int recordSize(String namespace, String name, String json) {
+        return JfxMappedStateStore.RECORD_HEADER_SIZE + (namespace + JfxMappedStateStore.NAMESPACE_SEPARATOR + name).getBytes(StandardCharsets.UTF_8).length
+                + (json == null ? 0 : json.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    public void test_loadAfterReopen() throws IOException {
+        setState("a", "{\"x\":1,\"s\":\"text\"}");
+        setState("b", "{\"x\":2}");
+        reopen();
+
+        assertEquals(1, getState("a").getJsonNumber("x").intValue());
+        assertEquals("text", getState("a").getJsString("s").getString());
+        assertEquals(2, getState("b").getJsonNumber("x").intValue());
+        assertEquals(2, myStore.getNamespaces().size());
+    }
+
+    @Test
+    public void test_appendOnlyChangedKeys() throws IOException {
+        setState("a", "{\"x\":1,\"y\":2}");
+        int size = myStore.getFileSize();
+
+        setState("a", "{\"x\":1,\"y\":3}");
+        assertEquals(size + recordSize("a", "y", "3"), myStore.getFileSize());
+
+        setState("a", "{\"x\":1}");
+        assertEquals(size + recordSize("a", "y", "3") + recordSize("a", "y", null), myStore.getFileSize());
+        reopen();
+
+        assertEquals(1, getState("a").getJsonNumber("x").intValue());
+        assertFalse(getState("a").containsKey("y"));
+        assertEquals(recordSize("a", "y", "2") + recordSize("a", "y", "3") + recordSize("a", "y", null), myStore.getGarbageBytes());
+    }
+
+    @Test
+    public void test_removeNamespace() throws IOException {
+        setState("a", "{\"x\":1}");
+        setState("b", "{\"x\":2}");
+        myStore.removeNamespace("a");
+        reopen();
+
+        assertFalse(myStore.getNamespaces().contains("a"));
+        assertFalse(getState("a").containsKey("x"));
+        assertEquals(2, getState("b").getJsonNumber("x").intValue());
+    }
+
+    @Test
+    public void test_compactionRoundTrip() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            setState("a", "{\"x\":" + i + ",\"y\":\"" + i + "\"}");
+        }
+        setState("b", "{\"z\":true}");
+        assertTrue(myStore.getGarbageBytes() > 0);
+
+        myStore.compact();
+        assertEquals(1, myStore.getCompactionCount());
+        assertEquals(0, myStore.getGarbageBytes());
+        assertEquals(JfxMappedStateStore.HEADER_SIZE + recordSize("a", "x", "99") + recordSize("a", "y", "\"99\"") + recordSize("b", "z", "true"), myStore.getFileSize());
+        assertEquals(99, getState("a").getJsonNumber("x").intValue());
+
+        // store is usable after compaction and the compacted file loads
+        setState("a", "{\"x\":100,\"y\":\"99\"}");
+        reopen();
+
+        assertEquals(100, getState("a").getJsonNumber("x").intValue());
+        assertEquals("99", getState("a").getJsString("y").getString());
+        assertTrue(getState("b").containsKey("z"));
+        assertFalse(new File(myFile.getPath() + ".compact").exists());
+    }
+
+    @Test
+    public void test_tornRecordEndsRecords() throws IOException {
+        setState("a", "{\"x\":1}");
+        int size = myStore.getFileSize();
+        myStore.close();
+
+        // record torn before its key length was written, key length is written last
+        byte[] key = ("a" + JfxMappedStateStore.NAMESPACE_SEPARATOR + "y").getBytes(StandardCharsets.UTF_8);
+        try (RandomAccessFile file = new RandomAccessFile(myFile, "rw")) {
+            file.seek(size);
+            file.writeInt(0);
+            file.writeInt(1);
+            file.write(key);
+            file.write('2');
+        }
+
+        myStore = new JfxMappedStateStore(myFile);
+        assertEquals(size, myStore.getFileSize());
+        assertEquals(1, getState("a").getJsonNumber("x").intValue());
+        assertFalse(getState("a").containsKey("y"));
+
+        // next record replaces the torn one
+        setState("a", "{\"x\":2}");
+        reopen();
+        assertEquals(2, getState("a").getJsonNumber("x").intValue());
+        assertEquals(size + recordSize("a", "x", "2"), myStore.getFileSize());
+    }
+
+    @Test
+    public void test_recordPastEndOfFileEndsRecords() throws IOException {
+        setState("a", "{\"x\":1}");
+        int size = myStore.getFileSize();
+        myStore.close();
+
+        try (RandomAccessFile file = new RandomAccessFile(myFile, "rw")) {
+            file.seek(size);
+            file.writeInt(16);
+            file.writeInt(Integer.MAX_VALUE / 2);
+        }
+
+        myStore = new JfxMappedStateStore(myFile);
+        assertEquals(size, myStore.getFileSize());
+        assertEquals(1, getState("a").getJsonNumber("x").intValue());
+    }
+}
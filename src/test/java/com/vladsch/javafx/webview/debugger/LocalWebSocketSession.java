@@ -0,0 +1,145 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import netscape.javascript.JSObject;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link JfxWebSocketServer} on a free localhost port with one connected web socket client
+ */
+public class LocalWebSocketSession {
+    static final int INSTANCE_ID = 1;
+
+    JfxWebSocketServer myServer;
+    JfxDebuggerConnector myConnector;
+    WebSocketClient myClient;
+    final AtomicLong myReceived = new AtomicLong();
+
+    public void open() throws Exception {
+        int port = freePort();
+        CountDownLatch started = new CountDownLatch(1);
+        myServer = new JfxWebSocketServer(new InetSocketAddress("localhost", port), null, server -> started.countDown());
+        myConnector = new NullConnector();
+        myServer.addServer(myConnector, INSTANCE_ID);
+        myServer.start();
+        if (!started.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Web socket server did not start");
+        }
+
+        CountDownLatch connected = new CountDownLatch(1);
+        myClient = new WebSocketClient(new URI("ws://localhost:" + port + String.format(JfxWebSocketServer.WEB_SOCKET_RESOURCE, INSTANCE_ID))) {
+            @Override
+            public void onOpen(final ServerHandshake handshake) {
+                connected.countDown();
+            }
+
+            @Override
+            public void onMessage(final String message) {
+                myReceived.incrementAndGet();
+            }
+
+            @Override
+            public void onClose(final int code, final String reason, final boolean remote) {
+
+            }
+
+            @Override
+            public void onError(final Exception ex) {
+
+            }
+        };
+        myClient.connectBlocking();
+        if (!connected.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Web socket client did not connect");
+        }
+
+        // server side registration happens on its own thread
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!myServer.isDebuggerConnected(myConnector)) {
+            if (System.currentTimeMillis() > deadline) throw new IllegalStateException("Connection not registered");
+            Thread.sleep(10);
+        }
+    }
+
+    public void close() throws Exception {
+        myClient.closeBlocking();
+        myServer.removeServer(myConnector);
+        myServer.stop(1000);
+    }
+
+    public boolean send(String message) {
+        return myServer.send(myConnector, message);
+    }
+
+    public long getReceived() {
+        return myReceived.get();
+    }
+
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    static class NullConnector implements JfxDebuggerConnector {
+        @Override public void sendMessageToBrowser(final String data) {}
+
+        @Override public void onOpen() {}
+
+        @Override public void onClosed(final int code, final String reason, final boolean remote) {}
+
+        @Override public void log(final String type, final long timestamp, final JSObject args) {}
+
+        @Override public void debugBreak() {}
+
+        @Override public void pageReloading() {}
+
+        @Override public void reloadPage() {}
+
+        @Override public void setDebugOnLoad(final DebugOnLoad debugOnLoad) {}
+
+        @Override public DebugOnLoad getDebugOnLoad() {return DebugOnLoad.NONE;}
+
+        @Override public boolean isDebuggerPaused() {return false;}
+
+        @Override public void releaseDebugger(final boolean shuttingDown, @Nullable final Runnable runnable) {}
+
+        @Override public void removeAllBreakpoints(@Nullable final Runnable runAfter) {}
+
+        @Override public void pageLoadComplete() {}
+    }
+}